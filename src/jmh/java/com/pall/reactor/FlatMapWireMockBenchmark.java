@@ -0,0 +1,80 @@
+package com.pall.reactor;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.pall.reactor.raw.MyFlux;
+
+import reactor.core.publisher.Flux;
+
+//Raw MyFlux.flatMap against Flux.flatMap over the /slow and /fast WireMock workload from NonBlockingVSBlockingAPICalls
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlatMapWireMockBenchmark {
+
+    @Param({"8", "64"})
+    int maxConcurrency;
+
+    WireMockServer wireMock;
+    WebClient client;
+    String[] uris;
+
+    @Setup
+    public void setup() {
+        wireMock = new WireMockServer(options().dynamicPort().containerThreads(100));
+        wireMock.start();
+        wireMock.stubFor(get(urlEqualTo("/fast"))
+            .willReturn(aResponse().withStatus(200).withBody("Fast Response")));
+        wireMock.stubFor(get(urlEqualTo("/slow"))
+            .willReturn(aResponse().withFixedDelay(50).withStatus(200).withBody("Slow Response")));
+
+        client = WebClient.create("http://localhost:" + wireMock.port());
+        //One slow call in every ten
+        uris = new String[100];
+        for (int i = 0; i < uris.length; i++) {
+            uris[i] = i % 10 == 0 ? "/slow" : "/fast";
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        wireMock.stop();
+    }
+
+    @Benchmark
+    public String reactorFlatMap() {
+        return Flux.fromArray(uris)
+            .flatMap(uri -> client.get().uri(uri).retrieve().bodyToMono(String.class), maxConcurrency, 1)
+            .blockLast();
+    }
+
+    @Benchmark
+    public String myFluxFlatMap() {
+        return Flux.from(MyFlux.fromArray(uris)
+                .flatMap(uri -> client.get().uri(uri).retrieve().bodyToMono(String.class), maxConcurrency, 1))
+            .blockLast();
+    }
+}
@@ -0,0 +1,73 @@
+package com.pall.reactor;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.pall.reactor.agg.AggregationClient;
+
+//Latency distribution of a MOT lookup against a long tailed (log-normal) WireMock delay, with and without
+//hedging. SampleTime reports the percentiles, compare p0.99 between the two.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class HedgingWireMockBenchmark {
+
+    WireMockServer wireMock;
+    AggregationClient plain;
+    AggregationClient hedged;
+
+    @Setup
+    public void setup() {
+        wireMock = new WireMockServer(options().dynamicPort().containerThreads(100));
+        wireMock.start();
+        //Median 10ms with a heavy tail
+        wireMock.stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse().withLogNormalRandomDelay(10, 0.9).withStatus(200).withBody("MOT")));
+
+        String baseUrl = "http://localhost:" + wireMock.port();
+        plain = AggregationClient.builder(baseUrl).singleFlight(false).build();
+        hedged = AggregationClient.builder(baseUrl)
+            .singleFlight(false)
+            .hedging(hedge -> hedge.percentile(95).maxHedgeRate(0.1))
+            .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        plain.close();
+        hedged.close();
+        wireMock.stop();
+    }
+
+    @Benchmark
+    public String unhedged() {
+        return plain.mot("T00 AAA").block();
+    }
+
+    @Benchmark
+    public String hedged() {
+        return hedged.mot("T00 AAA").block();
+    }
+}
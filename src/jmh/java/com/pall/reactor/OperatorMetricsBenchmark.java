@@ -0,0 +1,79 @@
+package com.pall.reactor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.pall.reactor.hooks.OperatorMetrics;
+import com.pall.reactor.hooks.SamplingTracer;
+
+import reactor.core.publisher.Flux;
+
+//Cost of the OperatorMetrics and SamplingTracer hooks on the three stage map chain from RawFluxMapBenchmark. The hook
+//applies at assembly so the chain is built inside the benchmark method.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperatorMetricsBenchmark {
+
+    @Param({"1000", "100000"})
+    int size;
+
+    //none: no hook, counts: LongAdders only, gaps: LongAdders and a clock read per signal,
+    //traced: one subscription in a hundred traced, the rest pass through the outermost map only
+    @Param({"none", "counts", "gaps", "traced"})
+    String hook;
+
+    Integer[] source;
+    OperatorMetrics metrics;
+    SamplingTracer tracer;
+
+    @Setup
+    public void setup() {
+        source = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            source[i] = i;
+        }
+        if (hook.equals("traced")) {
+            tracer = SamplingTracer.builder().oneIn(100).build();
+            tracer.install();
+        } else if (!hook.equals("none")) {
+            metrics = new OperatorMetrics(hook.equals("gaps"));
+            metrics.install();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (metrics != null) {
+            metrics.uninstall();
+        }
+        if (tracer != null) {
+            tracer.uninstall();
+        }
+    }
+
+    @Benchmark
+    public void mapChain(Blackhole bh) {
+        Flux.fromArray(source)
+            .map(v -> v + 1)
+            .map(v -> v * 2)
+            .map(v -> v - 1)
+            .subscribe(bh::consume);
+    }
+}
@@ -0,0 +1,87 @@
+package com.pall.reactor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.pall.reactor.raw.MyFlux;
+import com.pall.reactor.raw.MyPrefetchSubscriber;
+
+//CPU heavy map run on one thread against the same map split across parallel rails and merged back
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelMapBenchmark {
+
+    @Param({"10000"})
+    int size;
+
+    @Param({"1", "2", "4"})
+    int parallelism;
+
+    Integer[] source;
+    ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        source = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            source[i] = i;
+        }
+        executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void sequentialMap(Blackhole bh) {
+        MyFlux.fromArray(source)
+            .map(ParallelMapBenchmark::heavy)
+            .subscribe(bh::consume);
+    }
+
+    @Benchmark
+    public void parallelMap(Blackhole bh) {
+        MyPrefetchSubscriber<Long> subscriber = MyPrefetchSubscriber.consuming(256, bh::consume);
+        MyFlux.fromArray(source)
+            .parallel(parallelism)
+            .runOn(executor)
+            .map(ParallelMapBenchmark::heavy)
+            .sequential()
+            .subscribe(subscriber);
+        while (!subscriber.isOnComplete() && subscriber.getThrowable() == null) {
+            Thread.onSpinWait();
+        }
+    }
+
+    //Enough arithmetic per element that the hand off between threads is not the whole cost
+    static long heavy(int value) {
+        long x = value;
+        for (int i = 0; i < 500; i++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+            x ^= x >>> 29;
+        }
+        return x;
+    }
+}
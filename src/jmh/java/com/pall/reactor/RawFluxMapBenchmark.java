@@ -0,0 +1,78 @@
+package com.pall.reactor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.pall.reactor.raw.MyFlux;
+import com.pall.reactor.raw.MyMapOperation;
+import com.pall.reactor.raw.MySubscriber;
+
+import reactor.core.publisher.Flux;
+
+//Per element overhead of a three stage map chain: raw MyFlux (fused and push based) against Reactor's Flux
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RawFluxMapBenchmark {
+
+    @Param({"1000", "100000"})
+    int size;
+
+    Integer[] source;
+
+    @Setup
+    public void setup() {
+        source = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            source[i] = i;
+        }
+    }
+
+    @Benchmark
+    public void myFluxFused(Blackhole bh) {
+        //Maps are fused into one stage and the consumer polls the array through it
+        MyFlux.fromArray(source)
+            .map(v -> v + 1)
+            .map(v -> v * 2)
+            .map(v -> v - 1)
+            .subscribe(bh::consume);
+    }
+
+    @Benchmark
+    public void myMapOperationPushed(Blackhole bh) {
+        //Three separate stages, each element travels through request/onNext
+        MySubscriber<Integer> subscriber = new MySubscriber<>();
+        new MyMapOperation<>(
+            new MyMapOperation<>(
+                new MyMapOperation<>(MyFlux.fromArray(source), (Integer v) -> v + 1),
+                (Integer v) -> v * 2),
+            (Integer v) -> v - 1)
+            .subscribe(subscriber);
+        subscriber.request(size);
+        bh.consume(subscriber.getOnNextElements());
+    }
+
+    @Benchmark
+    public void reactorFlux(Blackhole bh) {
+        Flux.fromArray(source)
+            .map(v -> v + 1)
+            .map(v -> v * 2)
+            .map(v -> v - 1)
+            .subscribe(bh::consume);
+    }
+}
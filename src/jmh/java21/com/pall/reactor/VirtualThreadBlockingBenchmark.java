@@ -0,0 +1,83 @@
+package com.pall.reactor;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+//Thousands of concurrent blocking calls to a slow WireMock endpoint offloaded onto boundedElastic against
+//virtual threads. Time per batch shows the throughput, run with -prof gc to compare allocation and memory:
+//gradle jmh -PvirtualThreads -PjmhIncludes=VirtualThreadBlockingBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VirtualThreadBlockingBenchmark {
+
+    @Param({"boundedElastic", "virtualThreads"})
+    String scheduler;
+
+    @Param({"2000"})
+    int calls;
+
+    WireMockServer wireMock;
+    HttpClient httpClient;
+    HttpRequest request;
+    Scheduler offload;
+
+    @Setup
+    public void setup() {
+        wireMock = new WireMockServer(options().dynamicPort().asynchronousResponseEnabled(true).asynchronousResponseThreads(50));
+        wireMock.start();
+        wireMock.stubFor(get(urlEqualTo("/slow"))
+            .willReturn(aResponse().withFixedDelay(100).withStatus(200).withBody("Slow Response")));
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + wireMock.port() + "/slow")).build();
+        offload = scheduler.equals("virtualThreads")
+            ? VirtualThreadScheduler.create()
+            : Schedulers.newBoundedElastic(Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE, Integer.MAX_VALUE, "boundedElastic");
+    }
+
+    @TearDown
+    public void tearDown() {
+        offload.dispose();
+        wireMock.stop();
+    }
+
+    @Benchmark
+    public Long blockingCalls() {
+        return Flux.range(0, calls)
+            .flatMap(i -> Mono.fromCallable(() -> httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body())
+                .subscribeOn(offload), calls)
+            .count()
+            .block();
+    }
+}
@@ -0,0 +1,217 @@
+package com.pall.reactor.load;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.http.DelayDistribution;
+import com.github.tomakehurst.wiremock.http.LogNormal;
+import com.pall.reactor.agg.AggregationClient;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+//Drives the aggregation pattern against WireMock stubs with random delays at a fixed open-loop arrival
+//rate: requests are started on schedule whether or not earlier ones have finished, as real callers would,
+//and latency is measured from when a request was due to start so a stall is not hidden by the requests
+//that were held back behind it (coordinated omission).
+//
+//Run with gradle loadTest, settings are passed as -Pname=value, e.g.
+//gradle loadTest -Prate=500 -Pduration=60 -Pdelay=bimodal -Pcache=true
+//The report goes to build/reports/loadTest with an .hgrm file of the full distribution for plotting.
+public class AggregationLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = defaults();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0 || !settings.containsKey(arg.substring(0, equals))) {
+                throw new IllegalArgumentException("Unknown setting " + arg + ", expected one of " + settings.keySet());
+            }
+            settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        new AggregationLoadTest(settings).run();
+    }
+
+    private static Map<String, String> defaults() {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("rate", "200");             //requests per second
+        settings.put("duration", "30");          //seconds measured
+        settings.put("warmup", "5");             //seconds run before measuring
+        settings.put("plates", "10000");         //distinct registrations cycled through
+        settings.put("delay", "lognormal");      //lognormal, bimodal or none
+        settings.put("median", "20");            //ms, median delay (the fast mode for bimodal)
+        settings.put("slowMedian", "400");       //ms, bimodal slow mode
+        settings.put("slowFraction", "0.02");    //bimodal share of slow responses
+        settings.put("sigma", "0.5");            //spread of the log-normal delays
+        settings.put("maxConnections", "200");
+        settings.put("cache", "false");
+        settings.put("hedging", "false");
+        settings.put("report", "build/reports/loadTest");
+        return settings;
+    }
+
+    private final Map<String, String> settings;
+    private final Histogram latencyMicros = new ConcurrentHistogram(3);
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private AggregationLoadTest(Map<String, String> settings) {
+        this.settings = settings;
+    }
+
+    private void run() throws Exception {
+        WireMockServer wireMock = new WireMockServer(options()
+            .dynamicPort()
+            .containerThreads(200)
+            .asynchronousResponseEnabled(true)
+            .asynchronousResponseThreads(50));
+        wireMock.start();
+        stub(wireMock);
+
+        AggregationClient.Builder builder = AggregationClient.builder("http://localhost:" + wireMock.port())
+            .maxConnections(intSetting("maxConnections"));
+        if (Boolean.parseBoolean(settings.get("cache"))) {
+            builder.cache(cache -> cache.expireAfterWrite(Duration.ofMinutes(10)).maximumSize(100_000));
+        }
+        if (Boolean.parseBoolean(settings.get("hedging"))) {
+            builder.hedging(hedge -> hedge.percentile(95).maxHedgeRate(0.05));
+        }
+
+        try (AggregationClient client = builder.build()) {
+            System.out.println("Warming up for " + settings.get("warmup") + "s");
+            drive(client, intSetting("warmup"));
+            latencyMicros.reset();
+            completed.set(0);
+            failed.set(0);
+
+            System.out.println("Measuring for " + settings.get("duration") + "s at " + settings.get("rate") + " requests/s");
+            long start = System.nanoTime();
+            drive(client, intSetting("duration"));
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            report(elapsedSeconds);
+        } finally {
+            wireMock.stop();
+        }
+    }
+
+    private void stub(WireMockServer wireMock) {
+        wireMock.stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(delayed(aResponse().withStatus(200).withBody("MOT for {{request.query.reg}}").withTransformers("response-template"))));
+        wireMock.stubFor(get(urlPathEqualTo("/dvla/tax"))
+            .willReturn(delayed(aResponse().withStatus(200).withBody("TAX for {{request.query.reg}}").withTransformers("response-template"))));
+        wireMock.stubFor(post(urlPathEqualTo("/enrich"))
+            .willReturn(delayed(aResponse().withStatus(200).withBody("Enriched"))));
+    }
+
+    private ResponseDefinitionBuilder delayed(ResponseDefinitionBuilder response) {
+        DelayDistribution delay = delay();
+        return delay == null ? response : response.withRandomDelay(delay);
+    }
+
+    private DelayDistribution delay() {
+        double median = doubleSetting("median");
+        double sigma = doubleSetting("sigma");
+        switch (settings.get("delay")) {
+            case "lognormal":
+                return new LogNormal(median, sigma);
+            case "bimodal":
+                return new BimodalDelay(median, doubleSetting("slowMedian"), sigma, doubleSetting("slowFraction"));
+            case "none":
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown delay " + settings.get("delay") + ", expected lognormal, bimodal or none");
+        }
+    }
+
+    //Starts rate requests a second for the given time and waits for the stragglers
+    private void drive(AggregationClient client, int seconds) throws InterruptedException {
+        int rate = intSetting("rate");
+        int plates = intSetting("plates");
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * seconds;
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        Flux.interval(Duration.ofNanos(periodNanos))
+            .take(total)
+            .flatMap(tick -> {
+                long due = start + (tick + 1) * periodNanos;
+                String reg = format("L%05d AAA", tick % plates);
+                return client.aggregate(reg)
+                    .doOnSuccess(response -> {
+                        latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(0, System.nanoTime() - due)));
+                        completed.incrementAndGet();
+                    })
+                    .doOnError(e -> failed.incrementAndGet())
+                    .onErrorResume(e -> Mono.empty());
+            }, Integer.MAX_VALUE)
+            .doFinally(signal -> done.countDown())
+            .subscribe();
+
+        if (!done.await(seconds + 60, TimeUnit.SECONDS)) {
+            System.out.println("Gave up waiting for outstanding requests");
+        }
+    }
+
+    private void report(double elapsedSeconds) throws IOException {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        File directory = new File(settings.get("report"));
+        directory.mkdirs();
+        File summary = new File(directory, "aggregation-" + timestamp + ".txt");
+        File distribution = new File(directory, "aggregation-" + timestamp + ".hgrm");
+
+        StringBuilder text = new StringBuilder();
+        text.append("settings     ").append(settings).append('\n');
+        text.append(format("throughput   %.1f requests/s%n", completed.get() / elapsedSeconds));
+        text.append(format("completed    %d%n", completed.get()));
+        text.append(format("failed       %d%n", failed.get()));
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            text.append(format("p%-11s %.2f ms%n", trim(percentile), latencyMicros.getValueAtPercentile(percentile) / 1000.0));
+        }
+        text.append(format("max          %.2f ms%n", latencyMicros.getMaxValue() / 1000.0));
+
+        System.out.print(text);
+        try (PrintStream out = new PrintStream(new FileOutputStream(summary))) {
+            out.print(text);
+        }
+        try (PrintStream out = new PrintStream(new FileOutputStream(distribution))) {
+            //Values are recorded in microseconds, scaled to milliseconds in the output
+            latencyMicros.outputPercentileDistribution(out, 1000.0);
+        }
+        System.out.println("Report written to " + summary.getPath() + " and " + distribution.getName());
+    }
+
+    private static String trim(double percentile) {
+        return percentile == Math.floor(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    private int intSetting(String name) {
+        return Integer.parseInt(settings.get(name));
+    }
+
+    private double doubleSetting(String name) {
+        return Double.parseDouble(settings.get(name));
+    }
+}
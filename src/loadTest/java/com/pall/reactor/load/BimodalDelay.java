@@ -0,0 +1,30 @@
+package com.pall.reactor.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.github.tomakehurst.wiremock.http.DelayDistribution;
+
+//Most responses come from a fast log-normal mode and slowFraction of them from a slow one, the shape of
+//a service that is usually quick but sometimes hits a cold cache or a GC pause. Only usable with a
+//WireMock server in the same process, it is not registered for JSON mappings.
+public class BimodalDelay implements DelayDistribution {
+
+    private final double fastMedianMillis;
+    private final double slowMedianMillis;
+    private final double sigma;
+    private final double slowFraction;
+
+    public BimodalDelay(double fastMedianMillis, double slowMedianMillis, double sigma, double slowFraction) {
+        this.fastMedianMillis = fastMedianMillis;
+        this.slowMedianMillis = slowMedianMillis;
+        this.sigma = sigma;
+        this.slowFraction = slowFraction;
+    }
+
+    @Override
+    public long sampleMillis() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double median = random.nextDouble() < slowFraction ? slowMedianMillis : fastMedianMillis;
+        return Math.round(median * Math.exp(random.nextGaussian() * sigma));
+    }
+}
@@ -0,0 +1,176 @@
+package com.pall.reactor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.pall.reactor.agg.AdaptiveConcurrencyLimit;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+//Calls are Sinks completed by hand and time is a manual clock so every latency is exact
+public class AdaptiveConcurrency {
+    
+    private final AtomicLong nanos = new AtomicLong();
+    private final List<Sinks.One<String>> calls = new ArrayList<>();
+    private final List<String> results = new ArrayList<>();
+    private final List<Throwable> errors = new ArrayList<>();
+    
+    private AdaptiveConcurrencyLimit limiter(int initialLimit, int maxQueue) {
+        return AdaptiveConcurrencyLimit.builder()
+                .initialLimit(initialLimit)
+                .maxQueue(maxQueue)
+                .windowSize(4)
+                .nanoClock(nanos::get)
+                .build();
+    }
+    
+    private Disposable call(AdaptiveConcurrencyLimit limiter) {
+        return limiter.<String>run(() -> {
+            Sinks.One<String> call = Sinks.one();
+            calls.add(call);
+            return call.asMono();
+        }).subscribe(results::add, errors::add);
+    }
+    
+    private void completeAll(long millis) {
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        //Calls started by these completions are left running
+        List<Sinks.One<String>> running = new ArrayList<>(calls);
+        calls.clear();
+        for (Sinks.One<String> call : running) {
+            call.tryEmitValue("done");
+        }
+    }
+    
+    @Test
+    void limitRisesWhileLatencyIsFlat() throws Exception {
+        AdaptiveConcurrencyLimit limiter = limiter(4, 100);
+        
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < limiter.limit(); i++) {
+                call(limiter);
+            }
+            completeAll(10);
+        }
+        
+        assertEquals(7, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+    }
+    
+    @Test
+    void limitDoesNotRiseWhenItIsNotUsed() throws Exception {
+        AdaptiveConcurrencyLimit limiter = limiter(4, 100);
+        
+        for (int i = 0; i < 4; i++) {
+            call(limiter);
+            completeAll(10);
+        }
+        
+        assertEquals(4, limiter.limit());
+    }
+    
+    @Test
+    void limitBacksOffWhenLatencyRises() throws Exception {
+        AdaptiveConcurrencyLimit limiter = limiter(4, 100);
+        for (int i = 0; i < 4; i++) {
+            call(limiter);
+        }
+        completeAll(10);
+        assertEquals(5, limiter.limit());
+        
+        //Four times slower than the best window, cut by the largest step allowed (half)
+        for (int i = 0; i < 4; i++) {
+            call(limiter);
+        }
+        completeAll(40);
+        assertEquals(2, limiter.limit());
+    }
+    
+    @Test
+    void limitRecoversOnceHigherLatencyBecomesTheNorm() throws Exception {
+        AdaptiveConcurrencyLimit limiter = AdaptiveConcurrencyLimit.builder()
+                .initialLimit(4)
+                .windowSize(4)
+                .baselineDrift(0.2)
+                .nanoClock(nanos::get)
+                .build();
+        
+        for (int round = 0; round < 3; round++) {
+            runRound(limiter, 10);
+        }
+        assertEquals(7, limiter.limit());
+        
+        //The downstream steps up to four times slower and stays there
+        int lowest = limiter.limit();
+        for (int round = 0; round < 30; round++) {
+            runRound(limiter, 40);
+            lowest = Math.min(lowest, limiter.limit());
+        }
+        
+        //Cut hard at first, then the baseline caught up and the limit grew past where it was
+        assertEquals(1, lowest);
+        assertTrue(limiter.limit() > 7, "limit is " + limiter.limit());
+    }
+    
+    private void runRound(AdaptiveConcurrencyLimit limiter, long millis) {
+        for (int i = 0; i < limiter.limit(); i++) {
+            call(limiter);
+        }
+        completeAll(millis);
+    }
+    
+    @Test
+    void limitBacksOffOnError() throws Exception {
+        AdaptiveConcurrencyLimit limiter = limiter(10, 100);
+        call(limiter);
+        
+        calls.get(0).tryEmitError(new RuntimeException("Forced error"));
+        
+        assertEquals(9, limiter.limit());
+        assertEquals("Forced error", errors.get(0).getMessage());
+    }
+    
+    @Test
+    void callsOverTheLimitQueueThenAreRejected() throws Exception {
+        AdaptiveConcurrencyLimit limiter = limiter(1, 1);
+        
+        call(limiter);
+        call(limiter);
+        call(limiter);
+        
+        assertEquals(1, limiter.inFlight());
+        assertEquals(1, limiter.queueDepth());
+        assertEquals(1, limiter.rejected());
+        assertTrue(errors.get(0) instanceof RejectedExecutionException);
+        
+        //The queued call starts as soon as the permit comes back
+        completeAll(10);
+        assertEquals(1, limiter.inFlight());
+        assertEquals(0, limiter.queueDepth());
+        completeAll(10);
+        assertEquals(List.of("done", "done"), results);
+    }
+    
+    @Test
+    void cancelledCallsGiveUpTheirPlace() throws Exception {
+        AdaptiveConcurrencyLimit limiter = limiter(1, 10);
+        Disposable running = call(limiter);
+        Disposable waiting = call(limiter);
+        
+        waiting.dispose();
+        assertEquals(0, limiter.queueDepth());
+        
+        running.dispose();
+        assertEquals(0, limiter.inFlight());
+        assertEquals(1, limiter.limit());
+    }
+}
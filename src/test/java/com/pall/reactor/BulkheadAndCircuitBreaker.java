@@ -0,0 +1,216 @@
+package com.pall.reactor;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.pall.reactor.agg.AggregationClient;
+import com.pall.reactor.agg.Bulkhead;
+import com.pall.reactor.agg.CircuitBreaker;
+import com.pall.reactor.agg.CircuitBreakerOpenException;
+import com.pall.reactor.agg.Endpoint;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+@WireMockTest
+public class BulkheadAndCircuitBreaker {
+    
+    private final AtomicLong nanos = new AtomicLong();
+    
+    @BeforeEach
+    public void stubs() {
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        stubFor(get(urlPathEqualTo("/dvla/tax"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withBody("TAX for {{request.query.reg}}")
+                .withTransformers("response-template")));
+    }
+    
+    private CircuitBreaker circuitBreaker() {
+        return CircuitBreaker.builder("test")
+                .slidingWindowSize(10)
+                .minimumCalls(4)
+                .failureRateThreshold(50)
+                .slowCallDuration(Duration.ofSeconds(1))
+                .waitInOpen(Duration.ofSeconds(30))
+                .nanoClock(nanos::get)
+                .build();
+    }
+    
+    @Test
+    void circuitBreaker_OpensAtFailureRateThenProbes() throws Exception {
+        CircuitBreaker circuitBreaker = circuitBreaker();
+        Mono<String> failing = circuitBreaker.run(() -> Mono.error(new RuntimeException("Forced error")));
+        Mono<String> working = circuitBreaker.run(() -> Mono.just("ok"));
+        
+        StepVerifier.create(working).expectNext("ok").verifyComplete();
+        StepVerifier.create(working).expectNext("ok").verifyComplete();
+        StepVerifier.create(failing).expectErrorMessage("Forced error").verify();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+        StepVerifier.create(failing).expectErrorMessage("Forced error").verify();
+        
+        //Two failures in four calls reaches 50%, from now on nothing is called
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        StepVerifier.create(working).expectError(CircuitBreakerOpenException.class).verify();
+        assertEquals(1, circuitBreaker.notPermittedCalls());
+        
+        //Once the wait is over a failed probe opens it again and a successful one closes it
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        StepVerifier.create(failing).expectErrorMessage("Forced error").verify();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        StepVerifier.create(working).expectNext("ok").verifyComplete();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+        assertEquals(0, circuitBreaker.failureRate());
+    }
+    
+    @Test
+    void circuitBreaker_OnlyOneProbeAtATime() throws Exception {
+        CircuitBreaker circuitBreaker = circuitBreaker();
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.run(() -> Mono.error(new RuntimeException("Forced error"))).onErrorResume(e -> Mono.empty()).block();
+        }
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        
+        Sinks.One<String> probe = Sinks.one();
+        circuitBreaker.run(probe::asMono).subscribe();
+        StepVerifier.create(circuitBreaker.run(() -> Mono.just("ok"))).expectError(CircuitBreakerOpenException.class).verify();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+        
+        probe.tryEmitValue("ok");
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+    
+    @Test
+    void circuitBreaker_SlowCallsCountAsFailures() throws Exception {
+        CircuitBreaker circuitBreaker = circuitBreaker();
+        Mono<String> slow = circuitBreaker.run(() -> Mono.fromCallable(() -> {
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+            return "slow";
+        }));
+        
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(slow).expectNext("slow").verifyComplete();
+        }
+        
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertEquals(4, circuitBreaker.failedCalls());
+    }
+    
+    @Test
+    void bulkhead_QueuesThenRejects() throws Exception {
+        Bulkhead bulkhead = Bulkhead.builder("test").maxConcurrentCalls(2).maxWaitingCalls(1).build();
+        List<Sinks.One<String>> calls = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        
+        for (int i = 0; i < 4; i++) {
+            bulkhead.<String>run(() -> {
+                Sinks.One<String> call = Sinks.one();
+                calls.add(call);
+                return call.asMono();
+            }).subscribe(v -> {}, errors::add);
+        }
+        
+        assertEquals(2, bulkhead.inFlight());
+        assertEquals(1, bulkhead.queueDepth());
+        assertEquals(1, bulkhead.rejected());
+        assertTrue(errors.get(0) instanceof RejectedExecutionException);
+        
+        calls.get(0).tryEmitValue("done");
+        assertEquals(2, bulkhead.inFlight());
+        assertEquals(0, bulkhead.queueDepth());
+    }
+    
+    @Test
+    void bulkhead_CallsSeeTheCallersContext() throws Exception {
+        Bulkhead bulkhead = Bulkhead.builder("test").maxConcurrentCalls(1).maxWaitingCalls(1).build();
+        
+        StepVerifier.create(bulkhead.run(() -> Mono.deferContextual(context -> Mono.just(context.<String>get("caller"))))
+                .contextWrite(Context.of("caller", "T00 AAA")))
+            .expectNext("T00 AAA")
+            .verifyComplete();
+    }
+    
+    @Test
+    void aggregation_SlowMotDoesNotStarveTax(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse()
+                .withFixedDelay(1000)
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+                .singleFlight(false)
+                .bulkhead(bulkhead -> bulkhead.maxConcurrentCalls(2).maxWaitingCalls(2))
+                .build()) {
+            
+            //Only four MOT lookups are let in, the rest fail straight away
+            List<Throwable> errors = new ArrayList<>();
+            Flux.range(0, 10)
+                .flatMap(i -> client.mot("T00 AAA").onErrorResume(e -> {
+                    errors.add(e);
+                    return Mono.empty();
+                }))
+                .subscribe();
+            assertEquals(6, errors.size());
+            assertEquals(6, client.bulkhead(Endpoint.MOT).rejected());
+            
+            //Meanwhile TAX has its own share and answers at once
+            StepVerifier.create(client.tax("T00 AAA"))
+                .expectNext("TAX for T00 AAA")
+                .expectComplete()
+                .verify(Duration.ofMillis(500));
+        }
+    }
+    
+    @Test
+    void aggregation_FailingMotOpensItsCircuit(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse().withStatus(500)));
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+                .singleFlight(false)
+                .circuitBreaker(circuitBreaker -> circuitBreaker.slidingWindowSize(10).minimumCalls(5))
+                .build()) {
+            
+            for (int i = 0; i < 20; i++) {
+                client.aggregate("T00 AAA").onErrorResume(e -> Mono.empty()).block();
+            }
+            
+            //Five failures opened the MOT circuit, the other fifteen never left the process
+            verify(5, getRequestedFor(urlPathEqualTo("/dvsa/mot")));
+            assertEquals(CircuitBreaker.State.OPEN, client.circuitBreaker(Endpoint.MOT).state());
+            assertEquals(15, client.circuitBreaker(Endpoint.MOT).notPermittedCalls());
+            assertEquals(CircuitBreaker.State.CLOSED, client.circuitBreaker(Endpoint.TAX).state());
+        }
+    }
+}
@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscription;
@@ -25,6 +26,11 @@ public class CrossCuttingTest {
 	
 	
 	
+	@AfterEach
+	void resetHooks() {
+		Hooks.resetOnEachOperator(OPERATOR_KEY);
+	}
+
 	@Test
 	void addDecoratorToEachOperator() throws Exception {
 		AtomicInteger countOfDecoratorOnNextCalls = new AtomicInteger();
@@ -0,0 +1,251 @@
+package com.pall.reactor;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.matching;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import com.pall.reactor.agg.AggregationClient;
+import com.pall.reactor.agg.Deadline;
+import com.pall.reactor.agg.DeadlineExceededException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@WireMockTest
+public class DeadlinePropagation {
+    
+    @BeforeEach
+    public void stubs() {
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        stubFor(get(urlPathEqualTo("/dvla/tax"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withBody("TAX for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        stubFor(post(urlPathEqualTo("/enrich"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withBody("Enriched data for {{jsonPath request.body '$.reg'}}. {{jsonPath request.body '$.tax'}}. {{jsonPath request.body '$.mot'}}")
+                .withTransformers("response-template")));
+    }
+    
+    private static AggregationClient client(WireMockRuntimeInfo wmRuntimeInfo) {
+        return AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())).build();
+    }
+    
+    @Test
+    void remainingBudgetIsSentAsAHeader(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        //Without single flight each lookup is the caller's own call and carries its deadline
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+                .singleFlight(false)
+                .build()) {
+            
+            client.aggregate("T00 AAA").contextWrite(Deadline.within(Duration.ofSeconds(2))).block();
+            
+            verify(getRequestedFor(urlPathEqualTo("/dvsa/mot")).withHeader(Deadline.HEADER, matching("\\d+")));
+            verify(getRequestedFor(urlPathEqualTo("/dvla/tax")).withHeader(Deadline.HEADER, matching("\\d+")));
+            verify(postRequestedFor(urlPathEqualTo("/enrich")).withHeader(Deadline.HEADER, matching("\\d+")));
+            //Enrich is sent after the lookups so it gets less of the budget than was started with
+            LoggedRequest enrich = WireMock.findAll(postRequestedFor(urlPathEqualTo("/enrich"))).get(0);
+            assertTrue(Long.parseLong(enrich.getHeader(Deadline.HEADER)) <= 2000);
+        }
+    }
+    
+    @Test
+    void noHeaderWithoutADeadline(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        try (AggregationClient client = client(wmRuntimeInfo)) {
+            
+            client.mot("T00 AAA").block();
+            
+            verify(getRequestedFor(urlPathEqualTo("/dvsa/mot")).withoutHeader(Deadline.HEADER));
+        }
+    }
+    
+    @Test
+    void hopsShareOneBudget(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        //Each hop fits the budget on its own, together they do not
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse()
+                .withFixedDelay(300)
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        stubFor(post(urlPathEqualTo("/enrich"))
+            .willReturn(aResponse()
+                .withFixedDelay(300)
+                .withStatus(200)
+                .withBody("Enriched")));
+        
+        try (AggregationClient client = client(wmRuntimeInfo)) {
+            
+            long start = System.nanoTime();
+            StepVerifier.create(client.aggregate("T00 AAA").contextWrite(Deadline.within(Duration.ofMillis(450))))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(2));
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+            
+            //Given up at the deadline rather than after both hops
+            assertTrue(elapsedMillis < 600, "took " + elapsedMillis + "ms");
+        }
+    }
+    
+    @Test
+    void nothingIsSentOnceTheDeadlineHasPassed(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        try (AggregationClient client = client(wmRuntimeInfo)) {
+            
+            StepVerifier.create(Mono.delay(Duration.ofMillis(50))
+                    .then(client.aggregate("T00 AAA"))
+                    .contextWrite(Deadline.within(Duration.ofMillis(10))))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(2));
+            
+            verify(0, getRequestedFor(urlPathEqualTo("/dvsa/mot")));
+            verify(0, getRequestedFor(urlPathEqualTo("/dvla/tax")));
+        }
+    }
+    
+    @Test
+    void innerDeadlineCannotExtendOuterOne(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse()
+                .withFixedDelay(300)
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        try (AggregationClient client = client(wmRuntimeInfo)) {
+            
+            StepVerifier.create(client.mot("T00 AAA")
+                    .contextWrite(Deadline.within(Duration.ofSeconds(5)))
+                    .contextWrite(Deadline.within(Duration.ofMillis(100))))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(2));
+        }
+    }
+    
+    @Test
+    void deadlineReachesCallsBehindABulkheadAndLimit(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse()
+                .withFixedDelay(300)
+                .withStatus(200)
+                .withBody("late")));
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+                .singleFlight(false)
+                .bulkhead(bulkhead -> bulkhead.maxConcurrentCalls(4))
+                .adaptiveConcurrency(limit -> limit.initialLimit(4))
+                .build()) {
+            
+            long start = System.nanoTime();
+            StepVerifier.create(client.aggregateAll(Flux.just("T00 AAA"))
+                    .contextWrite(Deadline.within(Duration.ofMillis(50))))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(2));
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+            
+            assertTrue(elapsedMillis < 250, "took " + elapsedMillis + "ms");
+            verify(getRequestedFor(urlPathEqualTo("/dvsa/mot")).withHeader(Deadline.HEADER, matching("\\d+")));
+        }
+    }
+    
+    @Test
+    void sharedLookupIsNotFailedByOneCallersDeadline(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse()
+                .withFixedDelay(300)
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        try (AggregationClient client = client(wmRuntimeInfo)) {
+            assertSharedLookupOutlivesShortDeadline(client);
+        }
+    }
+    
+    @Test
+    void cacheLoadIsNotFailedByOneCallersDeadline(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse()
+                .withFixedDelay(300)
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+                .singleFlight(false)
+                .cache(cache -> cache.expireAfterWrite(Duration.ofMinutes(10)).maximumSize(100))
+                .build()) {
+            assertSharedLookupOutlivesShortDeadline(client);
+        }
+    }
+    
+    @Test
+    void sharedLookupIsCancelledOnceEveryCallerHasGivenUp(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse()
+                .withFixedDelay(1000)
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        try (AggregationClient client = client(wmRuntimeInfo)) {
+            Mono<String> shorter = client.mot("T00 AAA").contextWrite(Deadline.within(Duration.ofMillis(50)));
+            Mono<String> longer = client.mot("T00 AAA").contextWrite(Deadline.within(Duration.ofMillis(150)));
+            
+            long start = System.nanoTime();
+            StepVerifier.create(Mono.zipDelayError(
+                        shorter.onErrorResume(DeadlineExceededException.class, e -> Mono.just("exceeded")),
+                        longer.onErrorResume(DeadlineExceededException.class, e -> Mono.just("exceeded"))))
+                .expectNextMatches(both -> both.getT1().equals("exceeded") && both.getT2().equals("exceeded"))
+                .verifyComplete();
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+            
+            //The call lived as long as the longer deadline, then went with its last caller
+            assertTrue(elapsedMillis >= 150 && elapsedMillis < 900, "took " + elapsedMillis + "ms");
+            assertEquals(0, client.singleFlight().inFlight());
+            verify(1, getRequestedFor(urlPathEqualTo("/dvsa/mot")));
+        }
+    }
+    
+    //The impatient caller misses first and starts the load, the patient one joins it and still gets the answer
+    private static void assertSharedLookupOutlivesShortDeadline(AggregationClient client) {
+        Mono<String> impatient = client.mot("T00 AAA").contextWrite(Deadline.within(Duration.ofMillis(100)));
+        Mono<String> patient = client.mot("T00 AAA").contextWrite(Deadline.within(Duration.ofSeconds(2)));
+        
+        StepVerifier.create(Mono.zip(
+                    impatient.map(v -> "ok").onErrorResume(DeadlineExceededException.class, e -> Mono.just("exceeded")),
+                    patient))
+            .expectNextMatches(both -> both.getT1().equals("exceeded") && both.getT2().equals("MOT for T00 AAA"))
+            .verifyComplete();
+        
+        //One call, made for both of them and so without either one's deadline
+        verify(1, getRequestedFor(urlPathEqualTo("/dvsa/mot")));
+        verify(getRequestedFor(urlPathEqualTo("/dvsa/mot")).withoutHeader(Deadline.HEADER));
+    }
+}
@@ -2,24 +2,54 @@ package com.pall.reactor;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 import static org.springframework.web.reactive.function.client.WebClient.create;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.BeforeEach;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.pall.reactor.agg.AggregationClient;
+import com.pall.reactor.agg.EnrichBatcher;
+import com.pall.reactor.agg.EnrichJsonEncoder;
+import com.pall.reactor.agg.EnrichRequest;
+import com.pall.reactor.agg.Endpoint;
+import com.pall.reactor.agg.Hedger;
+import com.pall.reactor.agg.ReactiveCache;
 
+import io.netty.buffer.PooledByteBufAllocator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.resources.ConnectionPoolMetrics;
 import reactor.test.StepVerifier;
 
 @WireMockTest
@@ -166,5 +196,359 @@ public class NonBlockingAggPattern {
     
     
     
-
+    @Test
+    void aggPattern_SharedPooledClient(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        List<String> regs = IntStream.range(0, 20).mapToObj(i -> format("T%02d AAA", i)).collect(Collectors.toList());
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+                .maxConnections(4)
+                .build()) {
+            
+            List<String> forceOrderNonBlockingResponse = Flux.fromIterable(regs)
+                    .flatMap(client::aggregate)
+                    .collectSortedList()
+                    .block();
+            
+            assertEquals(regs.size(), forceOrderNonBlockingResponse.size());
+            assertEquals("Enriched data for T00 AAA. TAX for T00 AAA. MOT for T00 AAA", forceOrderNonBlockingResponse.get(0));
+            assertEquals("Enriched data for T19 AAA. TAX for T19 AAA. MOT for T19 AAA", forceOrderNonBlockingResponse.get(19));
+            
+            //60 calls went through one pool that never opened more than 4 sockets
+            assertEquals(1, client.poolMetrics().size());
+            ConnectionPoolMetrics pool = client.poolMetrics().values().iterator().next();
+            assertEquals(4, pool.maxAllocatedSize());
+            assertTrue(pool.allocatedSize() <= 4);
+        }
+    }
+    
+    @Test
+    void aggPattern_DuplicateRegistrationsShareOneLookup(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        //Slow the lookups down so every duplicate arrives while the first call is still in flight
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .willReturn(aResponse()
+                .withFixedDelay(200)
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        stubFor(get(urlPathEqualTo("/dvla/tax"))
+            .willReturn(aResponse()
+                .withFixedDelay(200)
+                .withStatus(200)
+                .withBody("TAX for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())).build()) {
+            
+            List<String> responses = Flux.range(0, 50)
+                    .flatMap(i -> client.aggregate(i % 2 == 0 ? "T00 AAA" : "T11 BBB"))
+                    .collectSortedList()
+                    .block();
+            
+            assertEquals(50, responses.size());
+            assertEquals("Enriched data for T00 AAA. TAX for T00 AAA. MOT for T00 AAA", responses.get(0));
+            assertEquals("Enriched data for T11 BBB. TAX for T11 BBB. MOT for T11 BBB", responses.get(49));
+            
+            //One lookup per registration and endpoint, every caller still gets its own enrich call
+            verify(2, getRequestedFor(urlPathEqualTo("/dvsa/mot")));
+            verify(2, getRequestedFor(urlPathEqualTo("/dvla/tax")));
+            verify(50, postRequestedFor(urlPathEqualTo("/enrich")));
+            assertEquals(4, client.singleFlight().calls());
+            assertEquals(96, client.singleFlight().coalesced());
+            assertEquals(0, client.singleFlight().inFlight());
+        }
+    }
+    
+    @Test
+    void aggPattern_RepeatLookupsServedFromCache(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        //A plate no other test uses, so a slow call left over from an earlier test cannot land in these counts
+        String reg = "C00 ACH";
+        AtomicLong nanos = new AtomicLong();
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+                .cache(cache -> cache
+                        .expireAfterWrite(Duration.ofMinutes(10))
+                        .maximumSize(1_000)
+                        .ticker(nanos::get)
+                        .executor(Runnable::run))
+                .build()) {
+            
+            for (int i = 0; i < 3; i++) {
+                assertEquals("Enriched data for C00 ACH. TAX for C00 ACH. MOT for C00 ACH", client.aggregate(reg).block());
+            }
+            verify(1, getRequestedFor(urlPathEqualTo("/dvsa/mot")).withQueryParam("reg", equalTo(reg)));
+            verify(1, getRequestedFor(urlPathEqualTo("/dvla/tax")).withQueryParam("reg", equalTo(reg)));
+            
+            //Once the TTL has passed the next lookup goes back to the services
+            nanos.addAndGet(TimeUnit.MINUTES.toNanos(11));
+            client.aggregate(reg).block();
+            verify(2, getRequestedFor(urlPathEqualTo("/dvsa/mot")).withQueryParam("reg", equalTo(reg)));
+            verify(2, getRequestedFor(urlPathEqualTo("/dvla/tax")).withQueryParam("reg", equalTo(reg)));
+            
+            CacheStats stats = client.cacheStats();
+            assertEquals(4, stats.hitCount());
+            assertEquals(4, stats.missCount());
+        }
+    }
+    
+    @Test
+    void reactiveCache_StaleValueIsServedWhileAReloadRuns() throws Exception {
+        AtomicLong nanos = new AtomicLong();
+        //Each load waits until the test completes it
+        List<Sinks.One<String>> loads = new CopyOnWriteArrayList<>();
+        ReactiveCache<String, String> cache = ReactiveCache.<String, String>builder(key -> {
+                    Sinks.One<String> load = Sinks.one();
+                    loads.add(load);
+                    return load.asMono();
+                })
+                .refreshAfterWrite(Duration.ofMinutes(1))
+                .ticker(nanos::get)
+                .executor(Runnable::run)
+                .build();
+        
+        CompletableFuture<String> first = cache.get("T00 AAA").toFuture();
+        loads.get(0).tryEmitValue("MOT v1");
+        assertEquals("MOT v1", first.get(5, TimeUnit.SECONDS));
+        
+        //Past refreshAfterWrite the next read is answered with the old value straight away and starts a reload
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        assertEquals("MOT v1", cache.get("T00 AAA").block(Duration.ofSeconds(5)));
+        assertEquals(2, loads.size());
+        
+        //Reads while the reload is still running keep getting the old value without starting another
+        assertEquals("MOT v1", cache.get("T00 AAA").block(Duration.ofSeconds(5)));
+        assertEquals(2, loads.size());
+        
+        loads.get(1).tryEmitValue("MOT v2");
+        assertEquals("MOT v2", cache.get("T00 AAA").block(Duration.ofSeconds(5)));
+        assertEquals(2, loads.size());
+    }
+    
+    @Test
+    void reactiveCache_EvictsOnceMaximumWeightIsExceeded() throws Exception {
+        //Every value weighs 4, so two fit in a maximum weight of 10 but three do not
+        ReactiveCache<String, String> cache = ReactiveCache.<String, String>builder(key -> Mono.just("MOT" + key.charAt(0)))
+                .maximumWeight(10, (key, value) -> value.length())
+                .executor(Runnable::run)
+                .build();
+        
+        cache.get("A").block(Duration.ofSeconds(5));
+        cache.get("B").block(Duration.ofSeconds(5));
+        assertEquals(2, cache.estimatedSize());
+        assertEquals(0, cache.stats().evictionCount());
+        
+        cache.get("C").block(Duration.ofSeconds(5));
+        assertEquals(2, cache.estimatedSize());
+        assertEquals(1, cache.stats().evictionCount());
+        assertEquals(4, cache.stats().evictionWeight());
+    }
+    
+    @Test
+    void aggPattern_EnrichCallsAreBatched(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        stubFor(post(urlPathEqualTo("/enrich/batch"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("[{{#each (jsonPath request.body '$') as |item|}}\"Enriched data for {{item.reg}}. {{item.tax}}. {{item.mot}}\"{{#unless @last}},{{/unless}}{{/each}}]")
+                .withTransformers("response-template")));
+        List<String> regs = IntStream.range(0, 20).mapToObj(i -> format("T%02d AAA", i)).collect(Collectors.toList());
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+                .enrichBatching(8, Duration.ofMillis(50))
+                .build()) {
+            
+            List<String> forceOrderNonBlockingResponse = Flux.fromIterable(regs)
+                    .flatMap(client::aggregate)
+                    .collectSortedList()
+                    .block();
+            
+            //Every caller got the response for its own registration back out of the batch
+            assertEquals(regs.size(), forceOrderNonBlockingResponse.size());
+            for (int i = 0; i < regs.size(); i++) {
+                String reg = regs.get(i);
+                assertEquals(format("Enriched data for %s. TAX for %s. MOT for %s", reg, reg, reg), forceOrderNonBlockingResponse.get(i));
+            }
+            
+            long batches = client.enrichBatcher().batches();
+            assertEquals(20, client.enrichBatcher().requests());
+            assertTrue(batches >= 3 && batches < 20, "expected a few batches but there were " + batches);
+            verify((int) batches, postRequestedFor(urlPathEqualTo("/enrich/batch")));
+            verify(0, postRequestedFor(urlPathEqualTo("/enrich")));
+        }
+    }
+    
+    @Test
+    void enrichBatcher_KeepsBatchingWhenEveryBatchSlotIsBusy() throws Exception {
+        List<String> regs = IntStream.range(0, 200).mapToObj(i -> format("T%03d AAA", i)).sorted().collect(Collectors.toList());
+        
+        //One batch in flight at a time and callers on many threads, so requests pile up behind the busy slot
+        try (EnrichBatcher batcher = new EnrichBatcher(
+                batch -> Mono.delay(Duration.ofMillis(20)).thenReturn(batch.stream().map(EnrichRequest::getReg).collect(Collectors.toList())),
+                4, Duration.ofMillis(5), 1)) {
+            
+            List<String> results = Flux.fromIterable(regs)
+                    .parallel(8)
+                    .runOn(Schedulers.parallel())
+                    .flatMap(reg -> batcher.enrich(reg, "MOT", "TAX"))
+                    .sequential()
+                    .collectSortedList()
+                    .block(Duration.ofSeconds(30));
+            
+            assertEquals(regs, results);
+        }
+    }
+    
+    @Test
+    void enrichBatcher_FailsWaitingAndLaterCallersOnceClosed() throws Exception {
+        EnrichBatcher batcher = new EnrichBatcher(batch -> Mono.never(), 8, Duration.ofMillis(5), 1);
+        
+        StepVerifier.create(batcher.enrich("T00 AAA", "MOT", "TAX"))
+            .then(batcher::close)
+            .expectErrorMessage("EnrichBatcher is closed")
+            .verify(Duration.ofSeconds(5));
+        
+        StepVerifier.create(batcher.enrich("T01 AAA", "MOT", "TAX"))
+            .expectErrorMessage("EnrichBatcher is closed")
+            .verify(Duration.ofSeconds(5));
+    }
+    
+    @Test
+    void aggPattern_SlowLookupIsHedged(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        //The first MOT call hangs, anything after it answers straight away
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .inScenario("slow mot")
+            .whenScenarioStateIs(STARTED)
+            .willSetStateTo("warm")
+            .willReturn(aResponse()
+                .withFixedDelay(2000)
+                .withStatus(200)
+                .withBody("Slow MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .inScenario("slow mot")
+            .whenScenarioStateIs("warm")
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+                .hedging(hedge -> hedge.initialDelay(Duration.ofMillis(100)).maxHedgeRate(1))
+                .build()) {
+            
+            //Answered by the hedge well before the first call would have
+            StepVerifier.create(client.mot("T00 AAA"))
+                .expectNext("MOT for T00 AAA")
+                .expectComplete()
+                .verify(Duration.ofMillis(1500));
+            
+            verify(2, getRequestedFor(urlPathEqualTo("/dvsa/mot")));
+            Hedger hedger = client.hedger(Endpoint.MOT);
+            assertEquals(1, hedger.calls());
+            assertEquals(1, hedger.hedges());
+            assertEquals(1, hedger.hedgeWins());
+        }
+    }
+    
+    @Test
+    void aggPattern_HedgesAreCappedByRate(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        //Every call is slower than the hedge delay but only one in ten may be hedged
+        stubFor(get(urlPathEqualTo("/dvla/tax"))
+            .willReturn(aResponse()
+                .withFixedDelay(100)
+                .withStatus(200)
+                .withBody("TAX for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+                .singleFlight(false)
+                .hedging(hedge -> hedge.initialDelay(Duration.ofMillis(10)).minSamples(1_000).maxHedgeRate(0.1))
+                .build()) {
+            
+            Flux.range(0, 50)
+                .flatMap(i -> client.tax("T00 AAA"))
+                .blockLast();
+            
+            Hedger hedger = client.hedger(Endpoint.TAX);
+            assertEquals(50, hedger.calls());
+            assertTrue(hedger.hedges() <= 5, "hedges should be capped at 10% but were " + hedger.hedges());
+            verify((int) (50 + hedger.hedges()), getRequestedFor(urlPathEqualTo("/dvla/tax")));
+        }
+    }
+    
+    @Test
+    void aggPattern_StreamingEnrichBody(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())).build()) {
+            
+            List<String> forceOrderNonBlockingResponse = Flux.just("T00 AAA", "T11 BBB")
+                    .flatMap(client::aggregateStreaming)
+                    .collectSortedList()
+                    .block();
+            
+            assertEquals("Enriched data for T00 AAA. TAX for T00 AAA. MOT for T00 AAA", forceOrderNonBlockingResponse.get(0));
+            assertEquals("Enriched data for T11 BBB. TAX for T11 BBB. MOT for T11 BBB", forceOrderNonBlockingResponse.get(1));
+        }
+    }
+    
+    @Test
+    void enrichJsonEncoder_EscapesIntoPooledBuffer() throws Exception {
+        NettyDataBufferFactory factory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+        EnrichJsonEncoder encoder = new EnrichJsonEncoder(factory);
+        DataBuffer mot = factory.allocateBuffer(32).write("MOT \"passed\"\n", UTF_8);
+        DataBuffer tax = factory.allocateBuffer(32).write("TAX \\ £165", UTF_8);
+        String expected = "{\"reg\":\"T00 AAA\",\"mot\":\"MOT \\\"passed\\\"\\n\",\"tax\":\"TAX \\\\ £165\"}";
+        
+        DataBuffer fromBuffers = encoder.encode("T00 AAA", mot, tax);
+        DataBuffer fromStrings = encoder.encode("T00 AAA", "MOT \"passed\"\n", "TAX \\ £165");
+        
+        assertEquals(expected, fromBuffers.toString(UTF_8));
+        assertEquals(expected, fromStrings.toString(UTF_8));
+        //Inputs are left to the caller and every buffer goes back to the pool on its first release
+        assertTrue(DataBufferUtils.release(mot));
+        assertTrue(DataBufferUtils.release(tax));
+        assertTrue(DataBufferUtils.release(fromBuffers));
+        assertTrue(DataBufferUtils.release(fromStrings));
+    }
+    
+    @Test
+    void aggPattern_OrderedStreaming(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        //The first registration is the slowest so every other result has to wait for it
+        stubFor(get(urlPathEqualTo("/dvsa/mot"))
+            .withQueryParam("reg", equalTo("T00 AAA"))
+            .willReturn(aResponse()
+                .withFixedDelay(300)
+                .withStatus(200)
+                .withBody("MOT for {{request.query.reg}}")
+                .withTransformers("response-template")));
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())).build()) {
+            
+            StepVerifier.create(client.aggregateOrdered(Flux.just("T00 AAA", "T11 BBB", "T22 CCC"), 3))
+                .expectNext("Enriched data for T00 AAA. TAX for T00 AAA. MOT for T00 AAA")
+                .expectNext("Enriched data for T11 BBB. TAX for T11 BBB. MOT for T11 BBB")
+                .expectNext("Enriched data for T22 CCC. TAX for T22 CCC. MOT for T22 CCC")
+                .verifyComplete();
+        }
+    }
+    
+    @Test
+    void aggPattern_OrderedStreamingWindowIsBounded(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        AtomicInteger taken = new AtomicInteger();
+        Flux<String> regs = Flux.range(0, 1_000)
+                .map(i -> format("T%03d AAA", i))
+                .doOnNext(reg -> taken.incrementAndGet());
+        
+        try (AggregationClient client = AggregationClient.builder(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())).build()) {
+            
+            //With only the first result asked for, no more than a window of registrations is taken from the source
+            StepVerifier.create(client.aggregateOrdered(regs, 4), 1)
+                .expectNext("Enriched data for T000 AAA. TAX for T000 AAA. MOT for T000 AAA")
+                .then(() -> assertTrue(taken.get() <= 5, "took " + taken.get() + " registrations"))
+                .thenRequest(2)
+                .expectNext("Enriched data for T001 AAA. TAX for T001 AAA. MOT for T001 AAA")
+                .expectNext("Enriched data for T002 AAA. TAX for T002 AAA. MOT for T002 AAA")
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        }
+    }
+    
 }
@@ -13,6 +13,7 @@ import org.junit.jupiter.api.Test;
 
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.pall.reactor.raw.MyFlux;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -69,6 +70,54 @@ public class NonBlockingVSBlockingAPICalls {
 			.verifyComplete();
 	}
 	
+	@Test
+	@DisplayName("Raw MyFlux flatMap also serves the fastest responses first")
+	public void testNonBlocking_RawFlatMap(WireMockRuntimeInfo wmRuntimeInfo) {
+		//Given a sequence resulting in the slowest API being called first
+		MyFlux<String> flux = MyFlux.fromArray(
+				"/slow", 
+				"/fast",
+				"/fast"
+				).flatMap(uri -> create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+					.get()
+					.uri(uri)
+					.retrieve()
+					.bodyToFlux(String.class), 3, 1
+		);
+		
+		//Then the fastest responses are served first as all three calls are in flight together
+		StepVerifier.create(flux)
+			.expectNext(
+					"Fast Response",
+					"Fast Response",
+					"Slow Response"
+					)
+			.verifyComplete();
+	}
+	
+	@Test
+	@DisplayName("Raw MyFlux flatMap with a concurrency of one waits for each call in turn")
+	public void testNonBlocking_RawFlatMapConcurrencyOfOne(WireMockRuntimeInfo wmRuntimeInfo) {
+		MyFlux<String> flux = MyFlux.fromArray(
+				"/slow", 
+				"/fast",
+				"/fast"
+				).flatMap(uri -> create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()))
+					.get()
+					.uri(uri)
+					.retrieve()
+					.bodyToFlux(String.class), 1, 1
+		);
+		
+		StepVerifier.create(flux)
+			.expectNext(
+					"Slow Response",
+					"Fast Response",
+					"Fast Response"
+					)
+			.verifyComplete();
+	}
+	
 	@Test
 	@DisplayName("Blocking API client does NOT serve the fasted response first")
 	public void testBlockingCall(WireMockRuntimeInfo wmRuntimeInfo) {		
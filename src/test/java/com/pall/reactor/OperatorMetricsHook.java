@@ -0,0 +1,125 @@
+package com.pall.reactor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.pall.reactor.hooks.OperatorMetrics;
+import com.pall.reactor.hooks.StepSnapshot;
+
+import reactor.core.Scannable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+//Hooks are global so each test installs its own OperatorMetrics and removes it afterwards
+public class OperatorMetricsHook {
+
+    //Reactor names sources differently between versions ("range" in some, "source(FluxRange)" in others),
+    //so ask it rather than hard-coding the name. Taken before any hook is installed.
+    private static final String RANGE = Scannable.from(Flux.range(1, 1)).stepName();
+
+    private final OperatorMetrics metrics = new OperatorMetrics();
+
+    @BeforeEach
+    void install() {
+        metrics.install();
+    }
+
+    @AfterEach
+    void uninstall() {
+        metrics.uninstall();
+    }
+
+    @Test
+    void signalsAreCountedPerStepName() {
+        Flux.range(1, 3)
+            .map(v -> v + 1)
+            .map(v -> v * 2)
+            .blockLast();
+
+        StepSnapshot range = metrics.snapshot(RANGE);
+        assertEquals(1, range.subscriptions());
+        assertEquals(3, range.onNext());
+        assertEquals(1, range.onComplete());
+        assertEquals(0, range.onError());
+
+        //Both maps share one step name
+        StepSnapshot map = metrics.snapshot("map");
+        assertEquals(2, map.subscriptions());
+        assertEquals(6, map.onNext());
+        assertEquals(2, map.onComplete());
+        assertTrue(map.requests() >= 2);
+    }
+
+    @Test
+    void errorsAndCancelsAreCounted() {
+        StepVerifier.create(Flux.range(1, 3)
+                .map(v -> {
+                    if (v == 2) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return v;
+                }))
+            .expectNext(1)
+            .verifyError(IllegalStateException.class);
+
+        //map cancels range when its function throws
+        assertEquals(1, metrics.snapshot("map").onError());
+        assertEquals(1, metrics.snapshot(RANGE).cancels());
+        assertEquals(0, metrics.snapshot(RANGE).onError());
+    }
+
+    @Test
+    void gapsBetweenSignalsAreRecorded() {
+        Flux.range(1, 5)
+            .delayElements(Duration.ofMillis(10))
+            .map(v -> v)
+            .blockLast();
+
+        //Five onNext and the onComplete, each following the previous signal
+        StepSnapshot map = metrics.snapshot("map");
+        assertEquals(6, map.gapSamples());
+        assertTrue(map.gapNanosAtPercentile(50) >= Duration.ofMillis(8).toNanos(), map.toString());
+    }
+
+    @Test
+    void snapshotsCanBeTakenWhileThePipelineRuns() {
+        //Only one element is requested so range cannot run ahead of the snapshot
+        StepVerifier.create(Flux.range(1, 3).map(v -> v), 1)
+            .expectNext(1)
+            .then(() -> assertEquals(1, metrics.snapshot("map").onNext()))
+            .thenRequest(2)
+            .expectNext(2, 3)
+            .verifyComplete();
+
+        assertEquals(3, metrics.snapshot("map").onNext());
+    }
+
+    @Test
+    void contextStillReachesUpstreamOperators() {
+        Mono<String> mono = Mono.deferContextual(ctx -> Mono.just(ctx.<String>get("user")))
+            .map(String::toUpperCase)
+            .contextWrite(Context.of("user", "pall"));
+
+        StepVerifier.create(mono)
+            .expectNext("PALL")
+            .verifyComplete();
+    }
+
+    @Test
+    void operatorsAssembledAfterUninstallAreNotDecorated() {
+        metrics.uninstall();
+
+        Flux.range(1, 3).map(v -> v).blockLast();
+
+        assertNull(metrics.snapshot("map"));
+    }
+}
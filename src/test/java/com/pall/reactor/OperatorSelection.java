@@ -0,0 +1,136 @@
+package com.pall.reactor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.pall.reactor.hooks.OperatorMetrics;
+import com.pall.reactor.hooks.OperatorSelector;
+import com.pall.reactor.hooks.Sampler;
+import com.pall.reactor.hooks.SamplingTracer;
+import com.pall.reactor.hooks.TraceEvent;
+
+import reactor.core.Fuseable;
+import reactor.core.Scannable;
+import reactor.core.Scannable.Attr;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class OperatorSelection {
+
+    //Source names differ between Reactor versions, see OperatorMetricsHook
+    private static final String RANGE = Scannable.from(Flux.range(1, 1)).stepName();
+
+    private final OperatorMetrics metrics = new OperatorMetrics(false);
+    private final SamplingTracer tracer = SamplingTracer.builder().sampler(Sampler.always()).build();
+
+    @AfterEach
+    void uninstall() {
+        metrics.uninstall();
+        tracer.uninstall();
+    }
+
+    @Test
+    void onlyIncludedStepsAreDecorated() {
+        metrics.install(OperatorSelector.builder().includeSteps("filter").build());
+
+        Flux.range(1, 3).map(v -> v * 2).filter(v -> v > 2).blockLast();
+
+        assertEquals(Set.of("filter"), metrics.snapshot().keySet());
+        assertEquals(2, metrics.snapshot("filter").onNext());
+    }
+
+    @Test
+    void excludedStepsAreNotDecorated() {
+        metrics.install(OperatorSelector.builder().excludeSteps("map").build());
+
+        Flux.range(1, 3).map(v -> v * 2).filter(v -> v > 2).blockLast();
+
+        assertEquals(Set.of(RANGE, "filter"), metrics.snapshot().keySet());
+    }
+
+    @Test
+    void excludeRulesWinOverIncludeRules() {
+        metrics.install(OperatorSelector.builder()
+                .includeSteps("map", "filter")
+                .excludeSteps("filter")
+                .build());
+
+        Flux.range(1, 3).map(v -> v * 2).filter(v -> v > 2).blockLast();
+
+        assertEquals(Set.of("map"), metrics.snapshot().keySet());
+        assertEquals(3, metrics.snapshot("map").onNext());
+    }
+
+    @Test
+    void operatorsAreSelectedByScannableAttribute() {
+        metrics.install(OperatorSelector.builder().includeAttr(Attr.PREFETCH, prefetch -> prefetch == 8).build());
+
+        Flux.range(1, 3)
+            .flatMap(Mono::just, 4, 8)
+            .flatMap(Mono::just, 4, 16)
+            .blockLast();
+
+        //Only the flatMap with a prefetch of 8
+        assertEquals(Set.of("flatMap"), metrics.snapshot().keySet());
+        assertEquals(1, metrics.snapshot("flatMap").subscriptions());
+    }
+
+    @Test
+    void operatorsAreSelectedByType() {
+        metrics.install(OperatorSelector.builder().excludeType(Mono.class).build());
+
+        Flux.range(1, 3).map(v -> v * 2).collectList().map(list -> list.size()).block();
+
+        assertFalse(metrics.snapshot().containsKey("collectList"));
+        assertEquals(1, metrics.snapshot("map").subscriptions());
+    }
+
+    @Test
+    void selectedFuseableStepsStillComplete() {
+        metrics.install(OperatorSelector.builder().includeSteps("map").build());
+
+        //map after just and after range are both fuseable, the decorator has to turn fusion down
+        StepVerifier.create(Flux.just(1, 2, 3).map(v -> v * 2).filter(v -> v > 2))
+            .expectNext(4, 6)
+            .verifyComplete();
+        StepVerifier.create(Flux.range(1, 3).map(v -> v * 2).map(v -> v + 1))
+            .expectNext(3, 5, 7)
+            .verifyComplete();
+
+        assertEquals(Set.of("map"), metrics.snapshot().keySet());
+        assertEquals(9, metrics.snapshot("map").onNext());
+        assertEquals(3, metrics.snapshot("map").onComplete());
+    }
+
+    @Test
+    void unselectedOperatorsKeepFusion() {
+        metrics.install(OperatorSelector.builder().includeSteps("filter").build());
+
+        StepVerifier.create(Flux.range(1, 3).map(v -> v * 2))
+            .expectFusion(Fuseable.SYNC)
+            .expectNext(2, 4, 6)
+            .verifyComplete();
+
+        assertTrue(metrics.snapshot().isEmpty());
+    }
+
+    @Test
+    void tracerRecordsOnlySelectedSteps() {
+        tracer.install(OperatorSelector.builder().includeSteps("map", "filter").build());
+
+        Flux.range(1, 3).map(v -> v * 2).filter(v -> v > 2).take(5).blockLast();
+
+        Set<String> steps = tracer.traces().get(0).events().stream()
+                .map(TraceEvent::stepName)
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("map", "filter"), steps);
+    }
+}
@@ -0,0 +1,114 @@
+package com.pall.reactor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.pall.reactor.raw.MyConnectableFlux;
+import com.pall.reactor.raw.MyFlux;
+import com.pall.reactor.raw.MyIntFlux;
+import com.pall.reactor.raw.MyPublisher;
+import com.pall.reactor.raw.MySubscriber;
+
+public class RawConnectableFlux {
+    
+    @Test
+    void sourceIsSubscribedToOnceForAllSubscribers() throws Exception {
+        AtomicInteger sourceSubscriptions = new AtomicInteger();
+        int itemCount = 10;
+        
+        MyConnectableFlux<Integer> cf = MyFlux.<Integer>create(subscriber -> {
+                sourceSubscriptions.incrementAndGet();
+                MyIntFlux.range(0, itemCount).boxed().subscribe(subscriber);
+            })
+            .publish();
+        
+        MySubscriber<Integer> first = new MySubscriber<>();
+        MySubscriber<Integer> second = new MySubscriber<>();
+        cf.subscribe(first);
+        cf.subscribe(second);
+        first.request(itemCount);
+        second.request(itemCount);
+        
+        assertEquals(0, sourceSubscriptions.get(), "Source is not subscribed to until connect");
+        assertEquals(0, first.getOnNextElements().size());
+        
+        cf.connect();
+        
+        assertEquals(1, sourceSubscriptions.get());
+        assertEquals(itemCount, first.getOnNextElements().size());
+        assertEquals(itemCount, second.getOnNextElements().size());
+        assertTrue(first.isOnComplete());
+        assertTrue(second.isOnComplete());
+    }
+    
+    @Test
+    void upstreamDemandIsGatedByTheSlowestSubscriber() throws Exception {
+        MyPublisher<Integer> publisher = new MyPublisher<>();
+        MyConnectableFlux<Integer> cf = MyFlux.create(publisher).publish(4);
+        MySubscriber<Integer> fast = new MySubscriber<>();
+        MySubscriber<Integer> slow = new MySubscriber<>();
+        cf.subscribe(fast);
+        cf.subscribe(slow);
+        fast.request(100);
+        slow.request(2);
+        cf.connect();
+        
+        //Buffer of 4 so 4 requested upstream, slow subscriber only takes 2 so their slots cannot be reused yet
+        assertEquals(4, publisher.emitBatch(1, 2, 3, 4, 5, 6));
+        assertIterableEquals(List.of(1, 2, 3, 4), fast.getOnNextElements());
+        assertIterableEquals(List.of(1, 2), slow.getOnNextElements());
+        assertEquals(0, publisher.emitBatch(5), "Only 2 slots free which is below the 75% replenish mark");
+        
+        //Slow subscriber reads one more, 3 slots are now free so they are requested in one batch
+        slow.request(1);
+        assertEquals(3, publisher.emitBatch(5, 6, 7, 8));
+        assertIterableEquals(List.of(1, 2, 3, 4, 5, 6, 7), fast.getOnNextElements());
+        assertIterableEquals(List.of(1, 2, 3), slow.getOnNextElements());
+        
+        slow.request(100);
+        publisher.complete();
+        assertIterableEquals(List.of(1, 2, 3, 4, 5, 6, 7), slow.getOnNextElements());
+        assertTrue(fast.isOnComplete());
+        assertTrue(slow.isOnComplete());
+    }
+    
+    @Test
+    void elementsBufferedBeforeTheFirstSubscriberAreNotLost() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        MyConnectableFlux<String> cf = MyFlux.create(publisher).publish(4);
+        cf.connect();
+        
+        assertEquals(4, publisher.emitBatch("1", "2", "3", "4", "5"));
+        
+        MySubscriber<String> subscriber = new MySubscriber<>();
+        cf.subscribe(subscriber);
+        subscriber.request(10);
+        
+        assertIterableEquals(List.of("1", "2", "3", "4"), subscriber.getOnNextElements());
+    }
+    
+    @Test
+    void cancelledSubscriberNoLongerHoldsBackTheOthers() throws Exception {
+        MyPublisher<Integer> publisher = new MyPublisher<>();
+        MyConnectableFlux<Integer> cf = MyFlux.create(publisher).publish(4);
+        MySubscriber<Integer> active = new MySubscriber<>();
+        MySubscriber<Integer> stalled = new MySubscriber<>();
+        cf.subscribe(active);
+        cf.subscribe(stalled);
+        active.request(100);
+        cf.connect();
+        
+        assertEquals(4, publisher.emitBatch(1, 2, 3, 4));
+        assertEquals(0, publisher.emitBatch(5));
+        
+        stalled.cancel();
+        assertEquals(4, publisher.emitBatch(5, 6, 7, 8));
+        assertIterableEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), active.getOnNextElements());
+    }
+}
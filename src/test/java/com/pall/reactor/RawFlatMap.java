@@ -0,0 +1,109 @@
+package com.pall.reactor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.pall.reactor.raw.MyFlux;
+import com.pall.reactor.raw.MyIntFlux;
+import com.pall.reactor.raw.MyPublisher;
+
+import reactor.test.StepVerifier;
+
+public class RawFlatMap {
+    
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    void flatMap_MergesInnerPublishers() throws Exception {
+        StepVerifier.create(MyFlux.fromArray(1, 2, 3)
+                .flatMap(i -> MyFlux.fromArray(i + "a", i + "b")))
+            .expectNext("1a", "1b", "2a", "2b", "3a", "3b")
+            .verifyComplete();
+    }
+    
+    @Test
+    void flatMap_RespectsDownstreamDemand() throws Exception {
+        StepVerifier.create(MyFlux.fromArray(1, 2)
+                .flatMap(i -> MyIntFlux.range(i * 10, 3).boxed(), 2, 2), 0)
+            .thenRequest(1)
+            .expectNext(10)
+            .thenRequest(4)
+            .expectNextCount(4)
+            .thenRequest(Long.MAX_VALUE)
+            .expectNextCount(1)
+            .verifyComplete();
+    }
+    
+    @Test
+    void flatMap_NoMoreThanMaxConcurrencyInnersAreSubscribed() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        
+        MyFlux<Integer> flux = MyFlux.fromArray(1, 2, 3, 4, 5, 6, 7, 8)
+            .flatMap(i -> MyFlux.<Integer>create(subscriber -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    executor.execute(() -> {
+                        sleep(10);
+                        active.decrementAndGet();
+                        MyFlux.fromArray(i).subscribe(subscriber);
+                    });
+                }), 3, 1);
+        
+        StepVerifier.create(flux)
+            .expectNextCount(8)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+        
+        assertTrue(maxActive.get() <= 3, "at most 3 inners in flight but was " + maxActive.get());
+    }
+    
+    @Test
+    void flatMap_InnersEmittingFromManyThreads() throws Exception {
+        Integer[] outer = new Integer[100];
+        for (int i = 0; i < outer.length; i++) {
+            outer[i] = i;
+        }
+        long[] sum = new long[1];
+        
+        StepVerifier.create(MyFlux.fromArray(outer)
+                .flatMap(i -> MyIntFlux.range(0, 1_000).boxed().subscribeOn(executor), 8, 16))
+            .thenConsumeWhile(v -> true, v -> sum[0] += v)
+            .expectComplete()
+            .verify(Duration.ofSeconds(10));
+        
+        assertEquals(100L * 499_500, sum[0]);
+    }
+    
+    @Test
+    void flatMap_InnerErrorCancelsEverything() throws Exception {
+        MyPublisher<String> erroringInner = new MyPublisher<>();
+        
+        StepVerifier.create(MyFlux.fromArray(1, 2)
+                .<String>flatMap(i -> i == 1 ? MyFlux.fromArray("1") : erroringInner))
+            .expectNext("1")
+            .then(() -> erroringInner.error(new RuntimeException("Forced error")))
+            .expectErrorMessage("Forced error")
+            .verify();
+    }
+    
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.pall.reactor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+
+import com.pall.reactor.raw.MyFlux;
+import com.pall.reactor.raw.MyParallelFlux;
+import com.pall.reactor.raw.MySubscriber;
+
+import reactor.test.StepVerifier;
+
+public class RawParallelFlux {
+    
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    void parallel_ElementsAreDistributedRoundRobin() throws Exception {
+        MyParallelFlux<Integer> parallel = MyFlux.fromArray(0, 1, 2, 3, 4, 5).parallel(3);
+        
+        @SuppressWarnings("unchecked")
+        MySubscriber<Integer>[] rails = new MySubscriber[] {new MySubscriber<>(), new MySubscriber<>(), new MySubscriber<>()};
+        parallel.subscribe(rails);
+        for (MySubscriber<Integer> rail : rails) {
+            rail.request(10);
+        }
+        
+        assertEquals(List.of(0, 3), rails[0].getOnNextElements());
+        assertEquals(List.of(1, 4), rails[1].getOnNextElements());
+        assertEquals(List.of(2, 5), rails[2].getOnNextElements());
+        assertTrue(rails[0].isOnComplete());
+    }
+    
+    @Test
+    void parallel_RailWithoutDemandIsSkipped() throws Exception {
+        MyParallelFlux<Integer> parallel = MyFlux.fromArray(0, 1, 2, 3).parallel(2);
+        
+        @SuppressWarnings("unchecked")
+        MySubscriber<Integer>[] rails = new MySubscriber[] {new MySubscriber<>(), new MySubscriber<>()};
+        parallel.subscribe(rails);
+        rails[0].request(1);
+        rails[1].request(10);
+        
+        //Rail 0 runs out of demand after its first element and is passed over from then on
+        assertEquals(List.of(0), rails[0].getOnNextElements());
+        assertEquals(List.of(1, 2, 3), rails[1].getOnNextElements());
+    }
+    
+    @Test
+    void parallel_SourceWaitsForEveryRailToRequest() throws Exception {
+        MyParallelFlux<Integer> parallel = MyFlux.fromArray(0, 1, 2, 3).parallel(2);
+        
+        @SuppressWarnings("unchecked")
+        MySubscriber<Integer>[] rails = new MySubscriber[] {new MySubscriber<>(), new MySubscriber<>()};
+        parallel.subscribe(rails);
+        rails[1].request(10);
+        
+        assertEquals(List.of(), rails[1].getOnNextElements());
+        
+        rails[0].cancel();
+        
+        assertEquals(List.of(0, 1, 2, 3), rails[1].getOnNextElements());
+        assertTrue(rails[1].isOnComplete());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void parallel_WrongNumberOfSubscribers() throws Exception {
+        MySubscriber<Integer> subscriber = new MySubscriber<>();
+        
+        MyFlux.fromArray(1).parallel(2).subscribe(new Subscriber[] {subscriber});
+        
+        assertEquals("parallelism is 2 but there are 1 subscribers", subscriber.getThrowable().getMessage());
+    }
+    
+    @Test
+    void runOn_EachRailMapsOnTheExecutorAndSequentialMergesThemBack() throws Exception {
+        Integer[] elements = IntStream.range(0, 10_000).boxed().toArray(Integer[]::new);
+        Set<String> mapThreads = ConcurrentHashMap.newKeySet();
+        List<Long> received = new CopyOnWriteArrayList<>();
+        
+        MyFlux<Long> flux = MyFlux.fromArray(elements)
+                .parallel(4)
+                .runOn(executor)
+                .map(v -> {
+                    mapThreads.add(Thread.currentThread().getName());
+                    return v * 2L;
+                })
+                .sequential();
+        
+        StepVerifier.create(flux)
+            .recordWith(() -> received)
+            .expectNextCount(elements.length)
+            .expectComplete()
+            .verify(Duration.ofSeconds(10));
+        
+        //Order across rails is not kept but every element arrives once
+        assertEquals(IntStream.range(0, 10_000).mapToLong(v -> v * 2L).sum(), received.stream().mapToLong(Long::longValue).sum());
+        assertTrue(mapThreads.size() > 1, "map should have run on more than one thread");
+        assertTrue(mapThreads.stream().noneMatch(name -> name.equals(Thread.currentThread().getName())));
+    }
+    
+    @Test
+    void sequential_RespectsDownstreamDemand() throws Exception {
+        StepVerifier.create(MyFlux.fromArray(1, 2, 3, 4, 5, 6)
+                .parallel(2)
+                .runOn(executor, 2)
+                .sequential(2), 0)
+            .thenRequest(2)
+            .expectNextCount(2)
+            .thenRequest(4)
+            .expectNextCount(4)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+    }
+    
+    @Test
+    void sequential_ErrorOnOneRailIsDelivered() throws Exception {
+        StepVerifier.create(MyFlux.fromArray(1, 2, 3, 4)
+                .parallel(2)
+                .runOn(executor)
+                .map(v -> {
+                    if (v == 3) {
+                        throw new RuntimeException("Forced error");
+                    }
+                    return v;
+                })
+                .sequential())
+            .thenConsumeWhile(v -> true)
+            .expectErrorMessage("Forced error")
+            .verify(Duration.ofSeconds(5));
+    }
+}
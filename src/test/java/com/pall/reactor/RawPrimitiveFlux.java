@@ -0,0 +1,149 @@
+package com.pall.reactor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import com.pall.reactor.raw.MyFlux;
+import com.pall.reactor.raw.MyIntFlux;
+import com.pall.reactor.raw.MyIntSubscriber;
+import com.pall.reactor.raw.MyLongFlux;
+
+import reactor.test.StepVerifier;
+
+public class RawPrimitiveFlux {
+    
+    @Test
+    void intRange_MappedWithoutBoxing() throws Exception {
+        int[] received = new int[3];
+        int[] index = new int[1];
+        
+        MyIntFlux.range(1, 3)
+            .map(i -> i * 10)
+            .map(i -> i + 1)
+            .subscribe(i -> received[index[0]++] = i);
+        
+        assertArrayEquals(new int[] {11, 21, 31}, received);
+    }
+    
+    @Test
+    void intRange_RespectsDemand() throws Exception {
+        int[] received = new int[5];
+        int[] index = new int[1];
+        Subscription[] subscription = new Subscription[1];
+        AtomicBoolean completed = new AtomicBoolean();
+        
+        MyIntFlux.range(0, 5).subscribe(new MyIntSubscriber() {
+            
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription[0] = s;
+            }
+            
+            @Override
+            public void onNext(int element) {
+                received[index[0]++] = element;
+            }
+            
+            @Override
+            public void onError(Throwable throwable) {
+            }
+            
+            @Override
+            public void onComplete() {
+                completed.set(true);
+            }
+        });
+        
+        subscription[0].request(2);
+        assertEquals(2, index[0]);
+        subscription[0].request(10);
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4}, received);
+        assertTrue(completed.get());
+    }
+    
+    @Test
+    void intRange_BoxedAtTheEdge() throws Exception {
+        //Like Flux.range but only boxed once it leaves the numeric part of the pipeline
+        StepVerifier.create(MyIntFlux.range(1, 3).map(i -> i * 2).boxed(), 0)
+            .thenRequest(1)
+            .expectNext(2)
+            .thenRequest(2)
+            .expectNext(4, 6)
+            .verifyComplete();
+    }
+    
+    @Test
+    void intRange_ThrowingMapperCancelsUpstreamAndErrors() throws Exception {
+        int[] mapped = new int[1];
+        
+        StepVerifier.create(MyIntFlux.range(1, 5)
+                .map(i -> {
+                    mapped[0]++;
+                    if (i == 3) {
+                        throw new IllegalStateException("Forced error");
+                    }
+                    return i;
+                })
+                .boxed())
+            .expectNext(1, 2)
+            .expectErrorMessage("Forced error")
+            .verify();
+        
+        //Nothing further was pulled through the mapper once it had thrown
+        assertEquals(3, mapped[0]);
+    }
+    
+    @Test
+    void intRange_Empty() throws Exception {
+        StepVerifier.create(MyIntFlux.range(1, 0).boxed())
+            .verifyComplete();
+    }
+    
+    @Test
+    void mapToInt_BridgesFromMyFlux() throws Exception {
+        //The array source is fusable, the bridges must still apply their mappers
+        StepVerifier.create(MyFlux.fromArray("a", "bb", "ccc")
+                .mapToInt(String::length)
+                .map(i -> i * i)
+                .mapToObj(i -> "length squared " + i))
+            .expectNext("length squared 1", "length squared 4", "length squared 9")
+            .verifyComplete();
+    }
+    
+    @Test
+    void longRange_BeyondIntegerRange() throws Exception {
+        long start = Integer.MAX_VALUE;
+        
+        StepVerifier.create(MyLongFlux.range(start, 3).map(l -> l + 1).boxed())
+            .expectNext(start + 1, start + 2, start + 3)
+            .verifyComplete();
+    }
+    
+    @Test
+    void longRange_SumWithoutBoxing() throws Exception {
+        long[] sum = new long[1];
+        
+        MyLongFlux.range(1, 1_000_000)
+            .map(l -> l * 2)
+            .subscribe(l -> sum[0] += l);
+        
+        assertEquals(IntStream.rangeClosed(1, 1_000_000).asLongStream().map(l -> l * 2).sum(), sum[0]);
+    }
+    
+    @Test
+    void mapToLong_BridgesFromMyFlux() throws Exception {
+        StepVerifier.create(MyFlux.fromArray(List.of(1, 2), List.of(3))
+                .mapToLong(List::size)
+                .boxed())
+            .expectNext(2L, 1L)
+            .verifyComplete();
+    }
+}
@@ -0,0 +1,124 @@
+package com.pall.reactor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.pall.reactor.raw.MyFlux;
+import com.pall.reactor.raw.MyPublisher;
+
+import reactor.test.StepVerifier;
+
+public class RawPublishOnAndSubscribeOn {
+    
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "raw-executor"));
+    
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    void publishOn_SignalsAreDeliveredOnTheExecutor() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        List<String> mapThreads = new CopyOnWriteArrayList<>();
+        
+        MyFlux<String> flux = MyFlux.create(publisher)
+                .publishOn(executor, 4)
+                .map(v -> {
+                    mapThreads.add(Thread.currentThread().getName());
+                    return v + "_mapped";
+                });
+        
+        StepVerifier.create(flux)
+            .then(() -> publisher.next("1", "2"))
+            .expectNext("1_mapped", "2_mapped")
+            .then(() -> publisher.complete())
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+        
+        assertEquals(List.of("raw-executor", "raw-executor"), mapThreads);
+    }
+    
+    @Test
+    void publishOn_UpstreamIsOnlyAskedForPrefetchThenToppedUpInBatches() throws Exception {
+        MyPublisher<Integer> publisher = new MyPublisher<>();
+        //Drain tasks are queued and only run when the test says so, so nothing is consumed behind its back
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        Runnable runTasks = () -> {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        };
+        
+        //Prefetch of 4 so the upstream gets request(4) then request(3) each time 3 of them have been consumed
+        StepVerifier.create(MyFlux.create(publisher).publishOn(tasks::add, 4))
+            .then(() -> publisher.next(1, 2, 3, 4))
+            .then(runTasks)
+            .expectNext(1, 2, 3, 4)
+            .then(() -> {
+                Exception e = assertThrows(RuntimeException.class, () -> publisher.next(5, 6, 7, 8));
+                assertEquals("More elements published than requested", e.getMessage());
+            })
+            .then(runTasks)
+            .expectNext(5, 6, 7)
+            .thenCancel()
+            .verify(Duration.ofSeconds(5));
+    }
+    
+    @Test
+    void publishOn_LargeSequenceThroughSmallRingBuffer() throws Exception {
+        Integer[] elements = IntStream.range(0, 10_000).boxed().toArray(Integer[]::new);
+        
+        StepVerifier.create(MyFlux.fromArray(elements).publishOn(executor, 8), 0)
+            .thenRequest(10)
+            .expectNextCount(10)
+            .thenRequest(Long.MAX_VALUE)
+            .expectNextCount(9_990)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+    }
+    
+    @Test
+    void publishOn_ErrorIsDelivered() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        
+        StepVerifier.create(MyFlux.create(publisher).publishOn(executor))
+            .then(() -> publisher.next("1"))
+            .expectNext("1")
+            .then(() -> publisher.error(new RuntimeException("Forced error")))
+            .expectErrorMessage("Forced error")
+            .verify(Duration.ofSeconds(5));
+    }
+    
+    @Test
+    void subscribeOn_SourceIsSubscribedToOnTheExecutor() throws Exception {
+        List<String> subscribeThreads = new CopyOnWriteArrayList<>();
+        
+        MyFlux<String> flux = MyFlux.<String>create(subscriber -> {
+                subscribeThreads.add(Thread.currentThread().getName());
+                MyFlux.fromArray("1", "2").subscribe(subscriber);
+            })
+            .subscribeOn(executor);
+        
+        StepVerifier.create(flux)
+            .expectNext("1", "2")
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+        
+        assertTrue(subscribeThreads.contains("raw-executor"));
+    }
+}
@@ -1,18 +1,35 @@
 package com.pall.reactor;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
 import com.pall.reactor.raw.MyFlux;
+import com.pall.reactor.raw.MyLongFlux;
+import com.pall.reactor.raw.MyMapFlux;
 import com.pall.reactor.raw.MyMapOperation;
 import com.pall.reactor.raw.MyNOOPOperation;
+import com.pall.reactor.raw.MyPrefetchSubscriber;
 import com.pall.reactor.raw.MyPublisher;
+import com.pall.reactor.raw.MyQueueSubscription;
 import com.pall.reactor.raw.MySubscriber;
 
 import reactor.test.StepVerifier;
@@ -99,6 +116,85 @@ public class RawPublisherAndSubscriber {
         
     }
     
+    @Test
+    void emitBatch_OnlyEmitsAsManyAsRequested() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        MySubscriber<String> subscriber = new MySubscriber<>();
+        publisher.subscribe(subscriber);
+        
+        List<String> batch = List.of("1", "2", "3", "4", "5");
+        
+        assertEquals(0, publisher.emitBatch(batch), "Nothing requested so nothing emitted");
+        
+        subscriber.request(3);
+        int emitted = publisher.emitBatch(batch);
+        assertEquals(3, emitted);
+        assertIterableEquals(List.of("1", "2", "3"), subscriber.getOnNextElements());
+        
+        //Caller offers the remainder again once more has been requested
+        subscriber.request(10);
+        assertEquals(2, publisher.emitBatch(batch.subList(emitted, batch.size())));
+        assertIterableEquals(List.of("1", "2", "3", "4", "5"), subscriber.getOnNextElements());
+    }
+    
+    @Test
+    void emitBatch_Array() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        
+        StepVerifier.create(publisher, 0)
+            .thenRequest(2)
+            .then(() -> assertEquals(2, publisher.emitBatch("1", "2", "3")))
+            .expectNext("1", "2")
+            .then(() -> publisher.complete())
+            .verifyComplete();
+    }
+    
+    @Test
+    void emitBatch_AfterCancel() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        MySubscriber<String> subscriber = new MySubscriber<>();
+        publisher.subscribe(subscriber);
+        subscriber.request(2);
+        subscriber.cancel();
+        
+        Exception e = assertThrows(RuntimeException.class, () -> publisher.emitBatch(List.of("1")));
+        assertEquals("Publisher cancelled by subscriber", e.getMessage());
+    }
+    
+    @Test
+    void emitBatch_CountsOnlyWhatWasSentBeforeACancel() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        List<String> received = new ArrayList<>();
+        publisher.subscribe(new Subscriber<String>() {
+            private Subscription subscription;
+            
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription = s;
+                s.request(5);
+            }
+            
+            @Override
+            public void onNext(String t) {
+                received.add(t);
+                if (received.size() == 2) {
+                    subscription.cancel();
+                }
+            }
+            
+            @Override
+            public void onError(Throwable t) {
+            }
+            
+            @Override
+            public void onComplete() {
+            }
+        });
+        
+        assertEquals(2, publisher.emitBatch("1", "2", "3", "4", "5"));
+        assertIterableEquals(List.of("1", "2"), received);
+    }
+    
     @Test
     void elementsCannotPublishAfterSubscriberHasCancelled() throws Exception {
         MyPublisher<String> publisher = new MyPublisher<>();
@@ -140,6 +236,61 @@ public class RawPublisherAndSubscriber {
         assertEquals("Forced error", subscriber.getThrowable().getMessage());
     }
     
+    @Test
+    void requestedDemandIsCappedAtLongMaxValue() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        MySubscriber<String> subscriber = new MySubscriber<>();
+        publisher.subscribe(subscriber);
+        
+        //Long.MAX_VALUE is treated as unbounded so adding to it must not overflow to a negative demand
+        publisher.request(Long.MAX_VALUE);
+        publisher.request(Long.MAX_VALUE);
+        publisher.next("1", "2", "3");
+        
+        assertIterableEquals(List.of("1", "2", "3"), subscriber.getOnNextElements());
+    }
+    
+    @Test
+    void elementsCanBePublishedFromManyThreads() throws Exception {
+        MyPublisher<Integer> publisher = new MyPublisher<>();
+        MySubscriber<Integer> subscriber = new MySubscriber<>();
+        publisher.subscribe(subscriber);
+        publisher.request(Long.MAX_VALUE);
+        
+        int producers = 4;
+        int elementsPerProducer = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < elementsPerProducer; i++) {
+                    publisher.next(producer * elementsPerProducer + i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        publisher.complete();
+        
+        //Every element arrives exactly once and each producer's elements stay in the order they were published
+        assertEquals(producers * elementsPerProducer, subscriber.getOnNextElements().size());
+        int[] lastSeen = new int[producers];
+        Arrays.fill(lastSeen, -1);
+        for (int element : subscriber.getOnNextElements()) {
+            int producer = element / elementsPerProducer;
+            assertTrue(element > lastSeen[producer]);
+            lastSeen[producer] = element;
+        }
+        assertTrue(subscriber.isOnComplete());
+    }
+    
     @Test
     void confirmThatRawPublisherWorksWithStepVerifyer() throws Exception {
         MyPublisher<String> publisher = new MyPublisher<>();
@@ -214,6 +365,44 @@ public class RawPublisherAndSubscriber {
         
     }
     
+    @Test
+    void fluxLikeAPI_ChainedMapsAreFusedIntoOneStage() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        
+        //Three maps over different types collapse into a single MyMapFlux, the mappers must still
+        //be applied in the order they were declared
+        MyFlux<String> flux = MyFlux.create(publisher)
+                .map(v -> Integer.valueOf(v))
+                .map(v -> v * 10)
+                .map(v -> v + "_mapped");
+        
+        assertTrue(flux instanceof MyMapFlux);
+        
+        StepVerifier.create(flux, 0)
+            .thenRequest(2)
+            .then(() -> publisher.next("1", "2"))
+            .expectNext("10_mapped", "20_mapped")
+            .then(() -> publisher.complete())
+            .verifyComplete();
+    }
+    
+    @Test
+    void fluxLikeAPI_NoopStagesAreRemoved() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        
+        MyFlux<String> noop = MyFlux.create(publisher).noop();
+        assertSame(noop, noop.noop().noop());
+        
+        MyFlux<String> flux = noop.map(v -> v + "_first").noop().map(v -> v + "_second");
+        
+        StepVerifier.create(flux, 0)
+            .thenRequest(2)
+            .then(() -> publisher.next("1", "2"))
+            .expectNext("1_first_second", "2_first_second")
+            .then(() -> publisher.complete())
+            .verifyComplete();
+    }
+    
     @Test
     void fluxLikeAPI_MapToDifferentType() throws Exception {
         MyPublisher<String> publisher = new MyPublisher<>();     
@@ -230,6 +419,149 @@ public class RawPublisherAndSubscriber {
         
     }
     
+    @Test
+    void fluxLikeAPI_FromArray() throws Exception {
+        MyFlux<String> flux = MyFlux.fromArray("1", "2", "3")
+                .map(v -> v + "_mapped");
+        
+        StepVerifier.create(flux, 0)
+            .thenRequest(2)
+            .expectNext("1_mapped", "2_mapped")
+            .thenRequest(1)
+            .expectNext("3_mapped")
+            .verifyComplete();
+    }
+    
+    @Test
+    void fusion_DownstreamPollsValuesThroughMapStage() throws Exception {
+        List<String> polled = new ArrayList<>();
+        AtomicInteger fusionMode = new AtomicInteger(-1);
+        
+        MyFlux.fromArray("1", "2", "3")
+            .map(v -> v + "_mapped")
+            .subscribe(new Subscriber<String>() {
+                
+                @SuppressWarnings("unchecked")
+                @Override
+                public void onSubscribe(Subscription s) {
+                    //Map stage is itself the subscription and negotiates fusion on behalf of the array source
+                    MyQueueSubscription<String> qs = (MyQueueSubscription<String>) s;
+                    fusionMode.set(qs.requestFusion(MyQueueSubscription.ANY));
+                    String v;
+                    while ((v = qs.poll()) != null) {
+                        polled.add(v);
+                    }
+                }
+                
+                @Override
+                public void onNext(String t) {
+                    throw new IllegalStateException("onNext must not be signalled once SYNC fusion is granted");
+                }
+                
+                @Override
+                public void onError(Throwable t) {
+                }
+                
+                @Override
+                public void onComplete() {
+                }
+            });
+        
+        assertEquals(MyQueueSubscription.SYNC, fusionMode.get());
+        assertIterableEquals(List.of("1_mapped", "2_mapped", "3_mapped"), polled);
+    }
+    
+    @Test
+    void fusion_NotAvailableFromPushSource() throws Exception {
+        MyPublisher<String> publisher = new MyPublisher<>();
+        List<String> received = new ArrayList<>();
+        
+        //MyPublisher is push only so the map stage refuses fusion and the consumer falls back to request/onNext
+        MyFlux.create(publisher)
+            .map(v -> v + "_mapped")
+            .subscribe(received::add);
+        
+        publisher.next("1", "2");
+        assertIterableEquals(List.of("1_mapped", "2_mapped"), received);
+    }
+    
+    @Test
+    void fusion_ConsumerDrainsFusedChain() throws Exception {
+        List<Integer> received = new ArrayList<>();
+        
+        MyFlux.fromArray(1, 2, 3)
+            .map(v -> v * 10)
+            .map(v -> v + 1)
+            .subscribe(received::add);
+        
+        assertIterableEquals(List.of(11, 21, 31), received);
+    }
+    
+    @Test
+    void prefetchSubscriber_ReplenishesDemandItself() throws Exception {
+        MyPublisher<Integer> publisher = new MyPublisher<>();
+        MyPrefetchSubscriber<Integer> subscriber = MyPrefetchSubscriber.recording(4, 3, 10);
+        publisher.subscribe(subscriber);
+        
+        //4 requested up front then 3 more each time 3 arrive
+        assertEquals(4, publisher.emitBatch(1, 2, 3, 4, 5, 6));
+        assertEquals(3, publisher.emitBatch(5, 6, 7, 8, 9, 10));
+        
+        assertIterableEquals(List.of(1, 2, 3, 4, 5, 6, 7), subscriber.getOnNextElements());
+    }
+    
+    @Test
+    void prefetchSubscriber_RecordsOnlyTheMostRecentElements() throws Exception {
+        MyPrefetchSubscriber<Long> subscriber = MyPrefetchSubscriber.recording(256, 3);
+        
+        MyLongFlux.range(0, 1_000_000).boxed().subscribe(subscriber);
+        
+        assertTrue(subscriber.isOnComplete());
+        assertEquals(1_000_000, subscriber.getOnNextCount());
+        assertIterableEquals(List.of(999_997L, 999_998L, 999_999L), subscriber.getOnNextElements());
+    }
+    
+    @Test
+    void prefetchSubscriber_StreamingAssertionStopsTheSequence() throws Exception {
+        MyPrefetchSubscriber<Long> subscriber = MyPrefetchSubscriber.consuming(256, 
+                v -> assertTrue(v < 500_000, "element " + v + " out of range"));
+        
+        MyLongFlux.range(0, 1_000_000).boxed().subscribe(subscriber);
+        
+        assertEquals(500_000, subscriber.getOnNextCount());
+        assertEquals("element 500000 out of range ==> expected: <true> but was: <false>", subscriber.getThrowable().getMessage());
+        assertFalse(subscriber.isOnComplete());
+    }
+    
+    @Test
+    void prefetchSubscriber_IgnoresSignalsOnceTheSequenceHasFailed() throws Exception {
+        AtomicLong requested = new AtomicLong();
+        MyPrefetchSubscriber<Integer> subscriber = MyPrefetchSubscriber.consuming(4, 2,
+                v -> assertTrue(v != 2, "element " + v + " out of range"));
+        subscriber.onSubscribe(new Subscription() {
+            
+            @Override
+            public void request(long n) {
+                requested.addAndGet(n);
+            }
+            
+            @Override
+            public void cancel() {
+            }
+        });
+        
+        subscriber.onNext(1);
+        subscriber.onNext(2);
+        //A publisher that carries on after the cancel is ignored, it is not counted and gets no more demand
+        subscriber.onNext(3);
+        subscriber.onNext(4);
+        subscriber.onError(new RuntimeException("Late error"));
+        subscriber.onComplete();
+        
+        assertEquals(4, requested.get());
+        assertEquals(1, subscriber.getOnNextCount());
+        assertEquals("element 2 out of range ==> expected: <true> but was: <false>", subscriber.getThrowable().getMessage());
+        assertFalse(subscriber.isOnComplete());
+    }
     
-
 }
@@ -0,0 +1,139 @@
+package com.pall.reactor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.pall.reactor.hooks.Sampler;
+import com.pall.reactor.hooks.SamplingTracer;
+import com.pall.reactor.hooks.Trace;
+import com.pall.reactor.hooks.TraceEvent;
+
+import reactor.core.Scannable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+public class SamplingTracing {
+
+    //Source names differ between Reactor versions, see OperatorMetricsHook
+    private static final String RANGE = Scannable.from(Flux.range(1, 1)).stepName();
+    private static final String JUST = Scannable.from(Mono.just(1)).stepName();
+
+    private SamplingTracer tracer;
+
+    private void install(SamplingTracer.Builder builder) {
+        tracer = builder.build();
+        tracer.install();
+    }
+
+    @AfterEach
+    void uninstall() {
+        if (tracer != null) {
+            tracer.uninstall();
+        }
+    }
+
+    @Test
+    void oneInNSubscriptionsIsTraced() {
+        install(SamplingTracer.builder().oneIn(2));
+
+        for (int i = 0; i < 4; i++) {
+            Flux.range(1, 2)
+                .map(v -> v * 2)
+                .filter(v -> v > 0)
+                .blockLast();
+        }
+
+        //One decision per subscription, not one per operator
+        assertEquals(4, tracer.subscriptions());
+        assertEquals(2, tracer.sampled());
+        assertEquals(2, tracer.traces().size());
+
+        Trace trace = tracer.traces().get(0);
+        assertTrue(trace.isFinished());
+        Set<String> steps = trace.events().stream().map(TraceEvent::stepName).collect(Collectors.toSet());
+        assertEquals(Set.of(RANGE, "map", "filter"), steps);
+        assertEquals(2, trace.events().stream()
+                .filter(e -> e.stepName().equals(RANGE) && e.signal() == SignalType.ON_NEXT)
+                .count());
+    }
+
+    @Test
+    void unsampledSubscriptionsPassStraightThrough() {
+        install(SamplingTracer.builder().sampler(() -> false));
+
+        StepVerifier.create(Flux.range(1, 3).map(v -> v * 2).filter(v -> v > 2))
+            .expectNext(4, 6)
+            .verifyComplete();
+
+        assertEquals(1, tracer.subscriptions());
+        assertEquals(0, tracer.sampled());
+        assertTrue(tracer.traces().isEmpty());
+    }
+
+    @Test
+    void innerSubscriptionsJoinTheOuterTrace() {
+        install(SamplingTracer.builder().sampler(Sampler.always()));
+
+        StepVerifier.create(Flux.range(1, 3).flatMap(v -> Mono.just(v).map(i -> i * 10)))
+            .expectNext(10, 20, 30)
+            .verifyComplete();
+
+        assertEquals(1, tracer.subscriptions());
+        List<Trace> traces = tracer.traces();
+        assertEquals(1, traces.size());
+        assertEquals(3, traces.get(0).events().stream()
+                .filter(e -> e.stepName().equals(JUST) && e.signal() == SignalType.ON_SUBSCRIBE)
+                .count());
+    }
+
+    @Test
+    void contextStillReachesUpstreamOperatorsWhenSampled() {
+        install(SamplingTracer.builder().sampler(Sampler.always()));
+
+        StepVerifier.create(Mono.deferContextual(ctx -> Mono.just(ctx.<String>get("user")))
+                .map(String::toUpperCase)
+                .contextWrite(Context.of("user", "pall")))
+            .expectNext("PALL")
+            .verifyComplete();
+
+        assertEquals(1, tracer.sampled());
+    }
+
+    @Test
+    void longTracesAreCapped() {
+        install(SamplingTracer.builder().sampler(Sampler.always()).maxEvents(5));
+
+        Flux.range(1, 100).map(v -> v).blockLast();
+
+        Trace trace = tracer.traces().get(0);
+        assertEquals(5, trace.events().size());
+        assertTrue(trace.dropped() > 0);
+    }
+
+    @Test
+    void tokenBucketAllowsBurstThenRate() {
+        AtomicLong nanos = new AtomicLong();
+        Sampler sampler = Sampler.perSecond(1, 2, nanos::get);
+
+        assertTrue(sampler.sample());
+        assertTrue(sampler.sample());
+        assertFalse(sampler.sample());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(sampler.sample());
+        assertFalse(sampler.sample());
+    }
+}
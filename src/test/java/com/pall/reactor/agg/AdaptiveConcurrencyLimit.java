@@ -0,0 +1,190 @@
+package com.pall.reactor.agg;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.LongSupplier;
+
+//Limits how many calls run at once, moving the limit with the health of the downstream. Latencies are
+//collected over a window of calls and compared with a baseline, the lowest window average: while they
+//stay within tolerance of it and the limit is actually being used the limit goes up by one, once they
+//rise it is cut in proportion (the gradient, never more than half). An error cuts it by backoffRatio.
+//
+//The baseline is not a minimum for all time: after each window it moves baselineDrift of the way up to
+//that window's average. A short spike barely shifts it, but if the downstream settles at a higher latency
+//for good the baseline catches up and the limit climbs again instead of staying pinned at minLimit.
+//
+//Calls over the limit queue as described in ConcurrencyGate.
+public class AdaptiveConcurrencyLimit extends ConcurrencyGate {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int windowSize;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final double baselineDrift;
+
+    private volatile int limit;
+
+    //Window state, guarded by this
+    private long windowRttSum;
+    private int windowCount;
+    private int windowMaxInFlight;
+    private long minRtt = Long.MAX_VALUE;
+
+    private AdaptiveConcurrencyLimit(Builder builder) {
+        super(builder.maxQueue, builder.nanoClock);
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.windowSize = builder.windowSize;
+        this.tolerance = builder.tolerance;
+        this.backoffRatio = builder.backoffRatio;
+        this.baselineDrift = builder.baselineDrift;
+        this.limit = builder.initialLimit;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    int currentLimit() {
+        return limit;
+    }
+
+    @Override
+    RuntimeException rejection() {
+        return new RejectedExecutionException("Concurrency limit of " + limit + " reached and the queue is full");
+    }
+
+    @Override
+    void onStart(int running) {
+        synchronized (this) {
+            windowMaxInFlight = Math.max(windowMaxInFlight, running);
+        }
+    }
+
+    @Override
+    void onRelease(long rttNanos, boolean failed) {
+        synchronized (this) {
+            if (failed) {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+                resetWindow();
+            } else {
+                sample(rttNanos);
+            }
+        }
+    }
+
+    //Called holding the lock
+    private void sample(long rttNanos) {
+        windowRttSum += rttNanos;
+        if (++windowCount < windowSize) {
+            return;
+        }
+        long average = windowRttSum / windowCount;
+        minRtt = Math.min(minRtt, average);
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * minRtt / average));
+        if (gradient >= 1.0) {
+            //Latency is flat, only probe upwards if the current limit was actually reached
+            if (windowMaxInFlight >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        } else {
+            limit = Math.max(minLimit, (int) (limit * gradient));
+        }
+        minRtt += (long) ((average - minRtt) * baselineDrift);
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowRttSum = 0;
+        windowCount = 0;
+        windowMaxInFlight = inFlight();
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    public static class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private int maxQueue = 1_000;
+        private int windowSize = 20;
+        private double tolerance = 1.5;
+        private double backoffRatio = 0.9;
+        private double baselineDrift = 0.05;
+        private LongSupplier nanoClock = System::nanoTime;
+
+        private Builder() {
+        }
+
+        public Builder initialLimit(int initialLimit) {
+            if (initialLimit <= 0) { throw new IllegalArgumentException("initialLimit must be positive"); }
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        public Builder minLimit(int minLimit) {
+            if (minLimit <= 0) { throw new IllegalArgumentException("minLimit must be positive"); }
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        public Builder maxLimit(int maxLimit) {
+            if (maxLimit <= 0) { throw new IllegalArgumentException("maxLimit must be positive"); }
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        public Builder maxQueue(int maxQueue) {
+            if (maxQueue < 0) { throw new IllegalArgumentException("maxQueue cannot be negative"); }
+            this.maxQueue = maxQueue;
+            return this;
+        }
+
+        //Number of completed calls averaged before the limit is reconsidered
+        public Builder windowSize(int windowSize) {
+            if (windowSize <= 0) { throw new IllegalArgumentException("windowSize must be positive"); }
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        //How far above the best average latency still counts as flat, 1.5 allows 50%
+        public Builder tolerance(double tolerance) {
+            if (tolerance < 1) { throw new IllegalArgumentException("tolerance cannot be less than 1"); }
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        public Builder backoffRatio(double backoffRatio) {
+            if (backoffRatio <= 0 || backoffRatio >= 1) { throw new IllegalArgumentException("backoffRatio must be in (0, 1)"); }
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        //Fraction of the gap to each window's average the baseline latency moves up by, 0 keeps the lowest ever seen
+        public Builder baselineDrift(double baselineDrift) {
+            if (baselineDrift < 0 || baselineDrift >= 1) { throw new IllegalArgumentException("baselineDrift must be in [0, 1)"); }
+            this.baselineDrift = baselineDrift;
+            return this;
+        }
+
+        public Builder nanoClock(LongSupplier nanoClock) {
+            this.nanoClock = requireNonNull(nanoClock, "nanoClock cannot be null");
+            return this;
+        }
+
+        public AdaptiveConcurrencyLimit build() {
+            if (minLimit > maxLimit) { throw new IllegalArgumentException("minLimit cannot be greater than maxLimit"); }
+            if (initialLimit < minLimit || initialLimit > maxLimit) { throw new IllegalArgumentException("initialLimit must be between minLimit and maxLimit"); }
+            return new AdaptiveConcurrencyLimit(this);
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.pall.reactor.agg;
+
+import static java.util.Objects.requireNonNull;
+import static org.springframework.web.reactive.function.BodyInserters.fromDataBuffers;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+//One WebClient for the MOT, TAX and enrich calls of the aggregation pattern. Building a client per
+//call (WebClient.create in aggPattern) throws away the connection pool each time, this keeps a single
+//bounded Reactor Netty pool with keep-alive so connections are reused across registrations.
+//
+//maxConnections bounds the sockets per remote address, callers beyond that wait in a queue of at most
+//pendingAcquireMaxCount and fail fast once it is full rather than piling up without limit.
+//
+//MOT and TAX lookups go through a SingleFlight keyed by endpoint and registration, so a burst of
+//requests for the same plate makes one call per downstream. An optional ReactiveCache sits in front of
+//that so repeat lookups within the TTL do not leave the process at all. Enrich calls can be micro-batched
+//by an EnrichBatcher so a burst of registrations costs a handful of round trips. Slow MOT and TAX calls
+//can be hedged, see Hedger, and aggregateAll can be held to an AdaptiveConcurrencyLimit rather than
+//flatMap's fixed default of 256. Each downstream can have its own Bulkhead and CircuitBreaker so one
+//slow or failing service fails fast rather than starving the others.
+//
+//A Deadline set in the subscriber context bounds the whole aggregation and every call within it, and is
+//passed on to the downstreams as a header. MOT and TAX calls shared through the single flight or cache
+//run without any one caller's deadline, and carry no header, so a caller with a short budget cannot fail
+//them for everyone else. Each caller still gives up on its own deadline, and a single flight call is
+//cancelled once the last caller waiting on it has.
+public class AggregationClient implements AutoCloseable {
+
+    private static final ParameterizedTypeReference<List<String>> STRING_LIST = new ParameterizedTypeReference<List<String>>() {};
+
+    private final ConnectionProvider connectionProvider;
+    private final PoolMetricsRegistrar poolMetrics;
+    private final WebClient webClient;
+    private final SingleFlight<RequestKey, String> singleFlight;
+    private final ReactiveCache<RequestKey, String> cache;
+    private final EnrichBatcher enrichBatcher;
+    private final Map<Endpoint, Hedger> hedgers;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final Map<Endpoint, Bulkhead> bulkheads;
+    private final Map<Endpoint, CircuitBreaker> circuitBreakers;
+    private final EnrichJsonEncoder encoder = new EnrichJsonEncoder(new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT));
+
+    private AggregationClient(Builder builder) {
+        this.poolMetrics = new PoolMetricsRegistrar();
+        this.connectionProvider = ConnectionProvider.builder(builder.name)
+                .maxConnections(builder.maxConnections)
+                .pendingAcquireMaxCount(builder.pendingAcquireMaxCount)
+                .pendingAcquireTimeout(builder.pendingAcquireTimeout)
+                .maxIdleTime(builder.maxIdleTime)
+                .maxLifeTime(builder.maxLifeTime)
+                .evictInBackground(builder.maxIdleTime)
+                .metrics(true, () -> poolMetrics)
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .keepAlive(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) builder.connectTimeout.toMillis())
+                .responseTimeout(builder.responseTimeout);
+        this.webClient = WebClient.builder()
+                .baseUrl(builder.baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(Deadline.filter())
+                .build();
+        this.singleFlight = builder.singleFlight ? new SingleFlight<>() : null;
+        if (builder.cache != null) {
+            ReactiveCache.Builder<RequestKey, String> cacheBuilder = ReactiveCache.builder(this::call);
+            builder.cache.apply(cacheBuilder);
+            this.cache = cacheBuilder.build();
+        } else {
+            this.cache = null;
+        }
+        this.enrichBatcher = builder.batchSize > 0
+                ? new EnrichBatcher(this::enrichBatch, builder.batchSize, builder.batchWait, builder.maxConnections)
+                : null;
+        if (builder.hedging != null) {
+            this.hedgers = new EnumMap<>(Endpoint.class);
+            for (Endpoint endpoint : new Endpoint[] {Endpoint.MOT, Endpoint.TAX}) {
+                hedgers.put(endpoint, builder.hedging.apply(Hedger.builder()).build());
+            }
+        } else {
+            this.hedgers = null;
+        }
+        this.concurrencyLimit = builder.concurrencyLimit == null ? null
+                : builder.concurrencyLimit.apply(AdaptiveConcurrencyLimit.builder()).build();
+        this.bulkheads = new EnumMap<>(Endpoint.class);
+        this.circuitBreakers = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : new Endpoint[] {Endpoint.MOT, Endpoint.TAX, Endpoint.ENRICH}) {
+            String name = endpoint.name().toLowerCase();
+            if (builder.bulkhead != null) {
+                bulkheads.put(endpoint, builder.bulkhead.apply(Bulkhead.builder(name)).build());
+            }
+            if (builder.circuitBreaker != null) {
+                circuitBreakers.put(endpoint, builder.circuitBreaker.apply(CircuitBreaker.builder(name)).build());
+            }
+        }
+    }
+
+    public static Builder builder(String baseUrl) {
+        return new Builder(baseUrl);
+    }
+
+    public Mono<String> mot(String reg) {
+        return lookup(Endpoint.MOT, reg);
+    }
+
+    public Mono<String> tax(String reg) {
+        return lookup(Endpoint.TAX, reg);
+    }
+
+    public Mono<String> enrich(String reg, String mot, String tax) {
+        if (enrichBatcher != null) {
+            return enrichBatcher.enrich(reg, mot, tax);
+        }
+        return postEnrich(Mono.fromCallable(() -> encoder.encode(reg, mot, tax)));
+    }
+
+    //The body is only encoded once the request is ready to write it, from then on the buffer is the writer's to release
+    private Mono<String> postEnrich(Mono<DataBuffer> body) {
+        return guard(Endpoint.ENRICH, () -> webClient.post()
+                .uri(Endpoint.ENRICH.path())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(fromDataBuffers(body))
+                .retrieve()
+                .bodyToMono(String.class));
+    }
+
+    private Mono<List<String>> enrichBatch(List<EnrichRequest> batch) {
+        return guard(Endpoint.ENRICH, () -> webClient.post()
+                .uri(Endpoint.ENRICH_BATCH.path())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(batch)
+                .retrieve()
+                .bodyToMono(STRING_LIST));
+    }
+
+    //MOT and TAX are fetched together and the pair is enriched once both are back
+    public Mono<String> aggregate(String reg) {
+        return Deadline.bound(mot(reg).zipWith(tax(reg))
+                .flatMap(tuple -> enrich(reg, tuple.getT1(), tuple.getT2())));
+    }
+
+    private Mono<String> lookup(Endpoint endpoint, String reg) {
+        RequestKey key = new RequestKey(endpoint, reg);
+        return Deadline.bound(cache == null ? call(key) : cache.get(key));
+    }
+
+    private Mono<String> call(RequestKey key) {
+        if (singleFlight == null) {
+            return get(key.endpoint(), key.reg());
+        }
+        return singleFlight.execute(key, () -> get(key.endpoint(), key.reg()));
+    }
+
+    private Mono<String> get(Endpoint endpoint, String reg) {
+        if (hedgers == null) {
+            return request(endpoint, reg);
+        }
+        return hedgers.get(endpoint).hedge(() -> request(endpoint, reg));
+    }
+
+    private Mono<String> request(Endpoint endpoint, String reg) {
+        return guard(endpoint, () -> retrieve(endpoint, reg).bodyToMono(String.class));
+    }
+
+    //An open breaker fails the call before it takes a place in the bulkhead. Waiting in the bulkhead
+    //queue counts against the deadline too.
+    private <T> Mono<T> guard(Endpoint endpoint, Supplier<Mono<T>> call) {
+        Bulkhead bulkhead = bulkheads.get(endpoint);
+        CircuitBreaker circuitBreaker = circuitBreakers.get(endpoint);
+        Supplier<Mono<T>> bulkheaded = bulkhead == null ? call : () -> bulkhead.run(call);
+        return Deadline.bound(circuitBreaker == null ? Mono.defer(bulkheaded) : circuitBreaker.run(bulkheaded));
+    }
+
+    private WebClient.ResponseSpec retrieve(Endpoint endpoint, String reg) {
+        return webClient.get()
+                .uri(uri -> uri.path(endpoint.path()).queryParam("reg", "{reg}").build(reg))
+                .retrieve();
+    }
+
+    //Aggregates every registration, as many at once as the adaptive limit allows when one is configured.
+    //The flatMap never has more registrations open than the limit can grow to, so at most that many wait.
+    public Flux<String> aggregateAll(Flux<String> regs) {
+        if (concurrencyLimit == null) {
+            return regs.flatMap(this::aggregate);
+        }
+        return regs.flatMap(reg -> concurrencyLimit.run(() -> aggregate(reg)), concurrencyLimit.maxLimit());
+    }
+
+    //As aggregateAll but results come out in the order the registrations went in, each as soon as it and
+    //everything before it is ready. At most window registrations are worked on or held waiting for an
+    //earlier one, once the window is full no more are taken from regs until the head of it has been sent.
+    public Flux<String> aggregateOrdered(Flux<String> regs, int window) {
+        if (window <= 0) { throw new IllegalArgumentException("window must be positive"); }
+        if (concurrencyLimit == null) {
+            return regs.flatMapSequential(this::aggregate, window, 1);
+        }
+        return regs.flatMapSequential(reg -> concurrencyLimit.run(() -> aggregate(reg)), window, 1);
+    }
+
+    //As aggregate but the MOT and TAX bodies stay in the pooled buffers they were read into and are copied
+    //once, straight into the enrich request. Bypasses the single flight and cache, which hold Strings.
+    public Mono<String> aggregateStreaming(String reg) {
+        return Mono.zip(body(Endpoint.MOT, reg), body(Endpoint.TAX, reg))
+                //A body that arrived before the other one failed or was cancelled
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                //using owns the two bodies and releases them exactly once, whether the enrich call completes,
+                //fails or is cancelled and whether or not the request body was ever written. Releasing a pooled
+                //buffer twice could free one that has already been handed to another request.
+                .flatMap(bodies -> Mono.using(
+                        () -> bodies,
+                        held -> postEnrich(Mono.fromCallable(() -> encoder.encode(reg, held.getT1(), held.getT2()))),
+                        held -> {
+                            DataBufferUtils.release(held.getT1());
+                            DataBufferUtils.release(held.getT2());
+                        }));
+    }
+
+    private Mono<DataBuffer> body(Endpoint endpoint, String reg) {
+        return guard(endpoint, () -> retrieve(endpoint, reg).bodyToMono(DataBuffer.class));
+    }
+
+    //Live pool gauges per remote address, available once the first connection to it has been made
+    public Map<SocketAddress, ConnectionPoolMetrics> poolMetrics() {
+        return poolMetrics.pools();
+    }
+
+    //Calls made and callers coalesced onto them, null when single flight is switched off
+    public SingleFlight<?, String> singleFlight() {
+        return singleFlight;
+    }
+
+    //Hits, misses and evictions of the MOT and TAX cache, null when no cache is configured
+    public CacheStats cacheStats() {
+        return cache == null ? null : cache.stats();
+    }
+
+    //Batches sent and requests carried by them, null when enrich batching is switched off
+    public EnrichBatcher enrichBatcher() {
+        return enrichBatcher;
+    }
+
+    //Calls and hedges made to MOT or TAX, null when hedging is switched off
+    public Hedger hedger(Endpoint endpoint) {
+        return hedgers == null ? null : hedgers.get(endpoint);
+    }
+
+    //Current limit, in flight and queued registrations, null when no adaptive limit is configured
+    public AdaptiveConcurrencyLimit concurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    //In flight, queued and rejected calls to the endpoint, null when no bulkhead is configured
+    public Bulkhead bulkhead(Endpoint endpoint) {
+        return bulkheads.get(endpoint);
+    }
+
+    //State and failure rate of the endpoint, null when no circuit breaker is configured
+    public CircuitBreaker circuitBreaker(Endpoint endpoint) {
+        return circuitBreakers.get(endpoint);
+    }
+
+    @Override
+    public void close() {
+        if (enrichBatcher != null) {
+            enrichBatcher.close();
+        }
+        connectionProvider.dispose();
+    }
+
+    public static class Builder {
+        private final String baseUrl;
+        private String name = "aggregation";
+        private int maxConnections = 50;
+        private int pendingAcquireMaxCount = 500;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration responseTimeout = Duration.ofSeconds(10);
+        private boolean singleFlight = true;
+        private UnaryOperator<ReactiveCache.Builder<?, String>> cache;
+        private int batchSize;
+        private Duration batchWait;
+        private UnaryOperator<Hedger.Builder> hedging;
+        private UnaryOperator<AdaptiveConcurrencyLimit.Builder> concurrencyLimit;
+        private UnaryOperator<Bulkhead.Builder> bulkhead;
+        private UnaryOperator<CircuitBreaker.Builder> circuitBreaker;
+
+        private Builder(String baseUrl) {
+            this.baseUrl = requireNonNull(baseUrl, "baseUrl cannot be null");
+        }
+
+        public Builder name(String name) {
+            this.name = requireNonNull(name, "name cannot be null");
+            return this;
+        }
+
+        public Builder maxConnections(int maxConnections) {
+            if (maxConnections <= 0) { throw new IllegalArgumentException("maxConnections must be positive"); }
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public Builder pendingAcquireMaxCount(int pendingAcquireMaxCount) {
+            if (pendingAcquireMaxCount <= 0) { throw new IllegalArgumentException("pendingAcquireMaxCount must be positive"); }
+            this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+            return this;
+        }
+
+        public Builder pendingAcquireTimeout(Duration pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = requireNonNull(pendingAcquireTimeout, "pendingAcquireTimeout cannot be null");
+            return this;
+        }
+
+        public Builder maxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = requireNonNull(maxIdleTime, "maxIdleTime cannot be null");
+            return this;
+        }
+
+        public Builder maxLifeTime(Duration maxLifeTime) {
+            this.maxLifeTime = requireNonNull(maxLifeTime, "maxLifeTime cannot be null");
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = requireNonNull(connectTimeout, "connectTimeout cannot be null");
+            return this;
+        }
+
+        public Builder responseTimeout(Duration responseTimeout) {
+            this.responseTimeout = requireNonNull(responseTimeout, "responseTimeout cannot be null");
+            return this;
+        }
+
+        //Concurrent MOT and TAX lookups for the same registration share one downstream call
+        public Builder singleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+            return this;
+        }
+
+        //Caches MOT and TAX responses, configured on the cache builder given to the function, e.g.
+        //cache(c -> c.expireAfterWrite(Duration.ofMinutes(10)).maximumSize(10_000))
+        public Builder cache(UnaryOperator<ReactiveCache.Builder<?, String>> cache) {
+            this.cache = requireNonNull(cache, "cache cannot be null");
+            return this;
+        }
+
+        //Sends enrich requests as one POST to /enrich/batch per maxSize requests or per maxWait, whichever comes first
+        public Builder enrichBatching(int maxSize, Duration maxWait) {
+            if (maxSize <= 0) { throw new IllegalArgumentException("maxSize must be positive"); }
+            this.batchSize = maxSize;
+            this.batchWait = requireNonNull(maxWait, "maxWait cannot be null");
+            return this;
+        }
+
+        //Hedges the MOT and TAX lookups, each endpoint keeps its own latency window, e.g.
+        //hedging(h -> h.percentile(95).maxHedgeRate(0.05))
+        public Builder hedging(UnaryOperator<Hedger.Builder> hedging) {
+            this.hedging = requireNonNull(hedging, "hedging cannot be null");
+            return this;
+        }
+
+        //Limits how many registrations aggregateAll works on at once, adapting to downstream latency and errors
+        public Builder adaptiveConcurrency(UnaryOperator<AdaptiveConcurrencyLimit.Builder> concurrencyLimit) {
+            this.concurrencyLimit = requireNonNull(concurrencyLimit, "concurrencyLimit cannot be null");
+            return this;
+        }
+
+        //Gives MOT, TAX and enrich a bulkhead each, configured the same way
+        public Builder bulkhead(UnaryOperator<Bulkhead.Builder> bulkhead) {
+            this.bulkhead = requireNonNull(bulkhead, "bulkhead cannot be null");
+            return this;
+        }
+
+        //Gives MOT, TAX and enrich a circuit breaker each, configured the same way
+        public Builder circuitBreaker(UnaryOperator<CircuitBreaker.Builder> circuitBreaker) {
+            this.circuitBreaker = requireNonNull(circuitBreaker, "circuitBreaker cannot be null");
+            return this;
+        }
+
+        public AggregationClient build() {
+            return new AggregationClient(this);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.pall.reactor.agg;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.RejectedExecutionException;
+
+//Caps the calls in flight to one downstream so a slow dependency can only tie up its own share of
+//connections and memory. Calls over maxConcurrentCalls wait in a queue of at most maxWaitingCalls and
+//anything beyond that fails straight away with a RejectedExecutionException.
+public class Bulkhead extends ConcurrencyGate {
+
+    private final String name;
+    private final int maxConcurrentCalls;
+
+    private Bulkhead(Builder builder) {
+        super(builder.maxWaitingCalls, System::nanoTime);
+        this.name = builder.name;
+        this.maxConcurrentCalls = builder.maxConcurrentCalls;
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    @Override
+    int currentLimit() {
+        return maxConcurrentCalls;
+    }
+
+    @Override
+    RuntimeException rejection() {
+        return new RejectedExecutionException("Bulkhead " + name + " is full");
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int maxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public static class Builder {
+        private final String name;
+        private int maxConcurrentCalls = 25;
+        private int maxWaitingCalls = 100;
+
+        private Builder(String name) {
+            this.name = requireNonNull(name, "name cannot be null");
+        }
+
+        public Builder maxConcurrentCalls(int maxConcurrentCalls) {
+            if (maxConcurrentCalls <= 0) { throw new IllegalArgumentException("maxConcurrentCalls must be positive"); }
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            return this;
+        }
+
+        public Builder maxWaitingCalls(int maxWaitingCalls) {
+            if (maxWaitingCalls < 0) { throw new IllegalArgumentException("maxWaitingCalls cannot be negative"); }
+            this.maxWaitingCalls = maxWaitingCalls;
+            return this;
+        }
+
+        public Bulkhead build() {
+            return new Bulkhead(this);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.pall.reactor.agg;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Mono;
+
+//Stops calling a downstream that keeps failing. The outcomes of the last slidingWindowSize calls are kept
+//in a ring, a call that errors or takes longer than slowCallDuration counts as a failure. Once at least
+//minimumCalls have been seen and the failure rate reaches failureRateThreshold the breaker opens and
+//calls fail straight away with a CircuitBreakerOpenException.
+//
+//After waitInOpen a single probe call is let through (half open): if it succeeds the breaker closes with
+//an empty window, if it fails the breaker opens again. A cancelled call is not counted either way.
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final long waitInOpenNanos;
+    private final LongSupplier nanoClock;
+
+    //Guarded by this
+    private final boolean[] window;
+    private int next;
+    private int count;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+
+    private final LongAdder successfulCalls = new LongAdder();
+    private final LongAdder failedCalls = new LongAdder();
+    private final LongAdder notPermittedCalls = new LongAdder();
+
+    private CircuitBreaker(Builder builder) {
+        this.name = builder.name;
+        this.window = new boolean[builder.slidingWindowSize];
+        this.minimumCalls = Math.min(builder.minimumCalls, builder.slidingWindowSize);
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallNanos = builder.slowCallDuration.toNanos();
+        this.waitInOpenNanos = builder.waitInOpen.toNanos();
+        this.nanoClock = builder.nanoClock;
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    public <T> Mono<T> run(Supplier<? extends Mono<T>> call) {
+        requireNonNull(call, "call cannot be null");
+        return Mono.defer(() -> {
+            boolean probe;
+            synchronized (this) {
+                if (!permit()) {
+                    notPermittedCalls.increment();
+                    return Mono.error(new CircuitBreakerOpenException(name));
+                }
+                probe = state == State.HALF_OPEN;
+            }
+            long start = nanoClock.getAsLong();
+            return Mono.<T>defer(call)
+                    .doOnSuccess(v -> record(probe, nanoClock.getAsLong() - start > slowCallNanos))
+                    .doOnError(e -> record(probe, true))
+                    .doOnCancel(() -> cancelled(probe));
+        });
+    }
+
+    //Called holding the lock
+    private boolean permit() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nanoClock.getAsLong() - openedAt < waitInOpenNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            default:
+                //One probe at a time
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+        }
+    }
+
+    private synchronized void record(boolean probe, boolean failed) {
+        if (failed) {
+            failedCalls.increment();
+        } else {
+            successfulCalls.increment();
+        }
+        if (probe) {
+            probing = false;
+            if (failed) {
+                open();
+            } else {
+                state = State.CLOSED;
+                next = 0;
+                count = 0;
+                failures = 0;
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            //A call from before the breaker opened, its outcome no longer matters
+            return;
+        }
+        if (count == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            count++;
+        }
+        window[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = next + 1 == window.length ? 0 : next + 1;
+        if (count >= minimumCalls && failureRate() >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    private synchronized void cancelled(boolean probe) {
+        if (probe) {
+            probing = false;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    //Percentage of failed calls in the window, 0 when it is empty
+    public synchronized double failureRate() {
+        return count == 0 ? 0 : 100.0 * failures / count;
+    }
+
+    public long successfulCalls() {
+        return successfulCalls.sum();
+    }
+
+    public long failedCalls() {
+        return failedCalls.sum();
+    }
+
+    public long notPermittedCalls() {
+        return notPermittedCalls.sum();
+    }
+
+    public static class Builder {
+        private final String name;
+        private int slidingWindowSize = 100;
+        private int minimumCalls = 20;
+        private double failureRateThreshold = 50;
+        private Duration slowCallDuration = Duration.ofSeconds(5);
+        private Duration waitInOpen = Duration.ofSeconds(10);
+        private LongSupplier nanoClock = System::nanoTime;
+
+        private Builder(String name) {
+            this.name = requireNonNull(name, "name cannot be null");
+        }
+
+        public Builder slidingWindowSize(int slidingWindowSize) {
+            if (slidingWindowSize <= 0) { throw new IllegalArgumentException("slidingWindowSize must be positive"); }
+            this.slidingWindowSize = slidingWindowSize;
+            return this;
+        }
+
+        public Builder minimumCalls(int minimumCalls) {
+            if (minimumCalls <= 0) { throw new IllegalArgumentException("minimumCalls must be positive"); }
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        //Percentage, 50 opens the breaker once half the calls in the window have failed
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            if (failureRateThreshold <= 0 || failureRateThreshold > 100) { throw new IllegalArgumentException("failureRateThreshold must be in (0, 100]"); }
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public Builder slowCallDuration(Duration slowCallDuration) {
+            this.slowCallDuration = requireNonNull(slowCallDuration, "slowCallDuration cannot be null");
+            return this;
+        }
+
+        public Builder waitInOpen(Duration waitInOpen) {
+            this.waitInOpen = requireNonNull(waitInOpen, "waitInOpen cannot be null");
+            return this;
+        }
+
+        public Builder nanoClock(LongSupplier nanoClock) {
+            this.nanoClock = requireNonNull(nanoClock, "nanoClock cannot be null");
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
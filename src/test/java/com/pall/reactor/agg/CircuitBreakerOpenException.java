@@ -0,0 +1,11 @@
+package com.pall.reactor.agg;
+
+//Thrown instead of calling a downstream whose circuit breaker is open
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String name) {
+        super("Circuit breaker " + name + " is open");
+    }
+}
@@ -0,0 +1,163 @@
+package com.pall.reactor.agg;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+//Lets at most limit() calls run at once. Calls over the limit wait in a queue of at most maxQueue and are
+//started from a work-in-progress drain loop as permits come back, anything beyond the queue is rejected
+//straight away. A caller that cancels while waiting gives up its place, one that cancels while running
+//cancels the call and hands its permit back.
+//
+//The call is subscribed from the drain loop rather than by the caller, so the caller's context is written
+//onto it explicitly, otherwise a Deadline or anything else carried in the context would not reach it.
+abstract class ConcurrencyGate {
+
+    private final int maxQueue;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Queue<Waiter> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    ConcurrencyGate(int maxQueue, LongSupplier nanoClock) {
+        this.maxQueue = maxQueue;
+        this.nanoClock = nanoClock;
+    }
+
+    abstract int currentLimit();
+
+    abstract RuntimeException rejection();
+
+    //A call has started, running is the number now in flight
+    void onStart(int running) {
+    }
+
+    //A call that was not cancelled has finished, after its permit has been handed back
+    void onRelease(long rttNanos, boolean failed) {
+    }
+
+    public <T> Mono<T> run(Supplier<? extends Mono<T>> call) {
+        requireNonNull(call, "call cannot be null");
+        return Mono.create(sink -> {
+            if (queued.incrementAndGet() > maxQueue) {
+                queued.decrementAndGet();
+                rejected.increment();
+                sink.error(rejection());
+                return;
+            }
+            Call<T> waiter = new Call<>(call, sink);
+            sink.onDispose(waiter::dispose);
+            queue.offer(waiter);
+            drain();
+        });
+    }
+
+    final void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        for (;;) {
+            //inFlight only goes up here so it cannot overshoot the limit
+            while (inFlight.get() < currentLimit()) {
+                Waiter waiter = queue.poll();
+                if (waiter == null) {
+                    break;
+                }
+                if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.STARTED)) {
+                    queued.decrementAndGet();
+                    onStart(inFlight.incrementAndGet());
+                    waiter.start();
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private void release(long rttNanos, boolean failed, boolean cancelled) {
+        inFlight.decrementAndGet();
+        if (!cancelled) {
+            onRelease(rttNanos, failed);
+        }
+        drain();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int queueDepth() {
+        return queued.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    private abstract static class Waiter {
+        static final int WAITING = 0;
+        static final int STARTED = 1;
+        static final int CANCELLED = 2;
+
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        abstract void start();
+    }
+
+    private final class Call<T> extends Waiter {
+        private final Supplier<? extends Mono<T>> call;
+        private final MonoSink<T> sink;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile Disposable running;
+        private long startNanos;
+
+        Call(Supplier<? extends Mono<T>> call, MonoSink<T> sink) {
+            this.call = call;
+            this.sink = sink;
+        }
+
+        @Override
+        void start() {
+            startNanos = nanoClock.getAsLong();
+            running = Mono.defer(call)
+                    .doOnSuccess(v -> finish(false, false))
+                    .doOnError(e -> finish(true, false))
+                    .doOnCancel(() -> finish(false, true))
+                    .contextWrite(sink.contextView())
+                    .subscribe(sink::success, sink::error, sink::success);
+        }
+
+        private void finish(boolean failed, boolean cancelled) {
+            if (released.compareAndSet(false, true)) {
+                release(nanoClock.getAsLong() - startNanos, failed, cancelled);
+            }
+        }
+
+        //Runs once the caller is done, whether it was answered or cancelled
+        void dispose() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                queued.decrementAndGet();
+                return;
+            }
+            Disposable d = running;
+            if (d != null) {
+                d.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.pall.reactor.agg;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+//An end-to-end time budget carried in the Reactor Context, so every hop of a request shares one budget
+//rather than each having its own timeout. Set it once where the request comes in:
+//
+//    client.aggregate(reg).contextWrite(Deadline.within(Duration.ofMillis(800)))
+//
+//bound() gives a Mono only what is left of the budget and cancels it with a DeadlineExceededException
+//once that is used up, filter() fails calls that would start after the deadline and passes the remaining
+//budget on to the downstream in the X-Request-Timeout-Ms header. A relative budget is sent rather than a
+//point in time so the downstream's clock does not need to agree with ours.
+public final class Deadline {
+
+    public static final String HEADER = "X-Request-Timeout-Ms";
+
+    private static final Object KEY = Deadline.class;
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline after(Duration budget) {
+        requireNonNull(budget, "budget cannot be null");
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    //For contextWrite, a deadline already set further downstream is kept if it is the earlier of the two
+    public static Function<Context, Context> within(Duration budget) {
+        requireNonNull(budget, "budget cannot be null");
+        return context -> {
+            Deadline deadline = after(budget);
+            Deadline existing = context.getOrDefault(KEY, null);
+            if (existing != null && existing.expiresAtNanos - deadline.expiresAtNanos <= 0) {
+                return context;
+            }
+            return context.put(KEY, deadline);
+        };
+    }
+
+    public static <T> Mono<T> bound(Mono<T> mono) {
+        return Mono.deferContextual(context -> {
+            Deadline deadline = context.getOrDefault(KEY, null);
+            if (deadline == null) {
+                return mono;
+            }
+            if (deadline.isExpired()) {
+                return Mono.error(exceeded());
+            }
+            return mono.timeout(deadline.remaining(), Mono.error(Deadline::exceeded));
+        });
+    }
+
+    //Added to a WebClient so every call made within a deadline carries what is left of it
+    public static ExchangeFilterFunction filter() {
+        return (request, next) -> Mono.deferContextual(context -> {
+            Deadline deadline = context.getOrDefault(KEY, null);
+            if (deadline == null) {
+                return next.exchange(request);
+            }
+            long remainingMillis = deadline.remaining().toMillis();
+            if (remainingMillis <= 0) {
+                return Mono.error(exceeded());
+            }
+            return next.exchange(ClientRequest.from(request)
+                    .header(HEADER, Long.toString(remainingMillis))
+                    .build());
+        });
+    }
+
+    private static DeadlineExceededException exceeded() {
+        return new DeadlineExceededException("Deadline exceeded");
+    }
+}
@@ -0,0 +1,11 @@
+package com.pall.reactor.agg;
+
+//Signalled instead of a result once the Deadline in the subscriber context has passed
+public class DeadlineExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,19 @@
+package com.pall.reactor.agg;
+
+//The downstream services called by the aggregation pattern
+public enum Endpoint {
+    MOT("/dvsa/mot"),
+    TAX("/dvla/tax"),
+    ENRICH("/enrich"),
+    ENRICH_BATCH("/enrich/batch");
+
+    private final String path;
+
+    Endpoint(String path) {
+        this.path = path;
+    }
+
+    public String path() {
+        return path;
+    }
+}
@@ -0,0 +1,138 @@
+package com.pall.reactor.agg;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+//Collects enrich requests from many callers and sends them downstream in batches of at most maxSize,
+//waiting no longer than maxWait for a batch to fill. The batch response is a list in request order and
+//each element is handed back to the caller waiting on that index.
+//
+//Callers arrive on many Netty threads at once, the FluxSink from Flux.create serializes them and buffers
+//while every batch slot is busy. bufferTimeout is in fair backpressure mode so it waits for flatMap to
+//free a slot rather than failing with an overflow error.
+//
+//A failed batch fails every caller in it. A caller that cancels still has its request sent, only the
+//answer is dropped. If the batching pipeline itself terminates, or the batcher is closed, every caller
+//still waiting and every later caller is failed rather than left hanging.
+public class EnrichBatcher implements AutoCloseable {
+
+    private final AtomicReference<FluxSink<Pending>> sink = new AtomicReference<>();
+    private final Set<Pending> outstanding = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Throwable> terminated = new AtomicReference<>();
+    private final Function<List<EnrichRequest>, Mono<List<String>>> batchCall;
+    private final Disposable batching;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+
+    public EnrichBatcher(Function<List<EnrichRequest>, Mono<List<String>>> batchCall, int maxSize, Duration maxWait, int maxConcurrentBatches) {
+        this.batchCall = requireNonNull(batchCall, "batchCall cannot be null");
+        if (maxSize <= 0) { throw new IllegalArgumentException("maxSize must be positive"); }
+        requireNonNull(maxWait, "maxWait cannot be null");
+        this.batching = Flux.<Pending>create(sink::set)
+                .bufferTimeout(maxSize, maxWait, true)
+                .flatMap(this::send, maxConcurrentBatches)
+                .subscribe(null, this::terminate, () -> terminate(new IllegalStateException("EnrichBatcher completed")));
+    }
+
+    public Mono<String> enrich(String reg, String mot, String tax) {
+        return Mono.defer(() -> {
+            Pending request = new Pending(new EnrichRequest(reg, mot, tax));
+            outstanding.add(request);
+            //Checked after adding so a terminate racing with this call either sees the request or is seen here
+            Throwable error = terminated.get();
+            if (error != null) {
+                request.fail(error);
+            } else {
+                sink.get().next(request);
+            }
+            return request.response.asMono();
+        });
+    }
+
+    private Mono<Void> send(List<Pending> batch) {
+        List<EnrichRequest> body = new ArrayList<>(batch.size());
+        for (Pending request : batch) {
+            body.add(request.request);
+        }
+        batches.increment();
+        requests.add(batch.size());
+        return Mono.defer(() -> batchCall.apply(body))
+                .doOnNext(responses -> route(batch, responses))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Empty enrich batch response")))
+                .onErrorResume(e -> {
+                    for (Pending request : batch) {
+                        request.fail(e);
+                    }
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void route(List<Pending> batch, List<String> responses) {
+        for (int i = 0; i < batch.size(); i++) {
+            Pending request = batch.get(i);
+            if (i < responses.size()) {
+                request.complete(responses.get(i));
+            } else {
+                request.fail(new IllegalStateException(
+                        "Enrich batch returned " + responses.size() + " responses for " + batch.size() + " requests"));
+            }
+        }
+    }
+
+    private void terminate(Throwable error) {
+        if (!terminated.compareAndSet(null, error)) {
+            return;
+        }
+        for (Pending request : outstanding) {
+            request.fail(error);
+        }
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    @Override
+    public void close() {
+        batching.dispose();
+        terminate(new IllegalStateException("EnrichBatcher is closed"));
+    }
+
+    private final class Pending {
+        final EnrichRequest request;
+        final Sinks.One<String> response = Sinks.one();
+
+        Pending(EnrichRequest request) {
+            this.request = request;
+        }
+
+        void complete(String value) {
+            outstanding.remove(this);
+            response.tryEmitValue(value);
+        }
+
+        void fail(Throwable error) {
+            outstanding.remove(this);
+            response.tryEmitError(error);
+        }
+    }
+}
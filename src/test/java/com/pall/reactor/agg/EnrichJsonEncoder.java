@@ -0,0 +1,121 @@
+package com.pall.reactor.agg;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+//Writes the enrich request {"reg":..,"mot":..,"tax":..} straight into a buffer from the given factory,
+//without building the JSON as a String first. The MOT and TAX bodies can be given as the DataBuffers they
+//arrived in, their bytes are copied across in runs with only the characters JSON needs escaped written
+//one at a time. Multi-byte UTF-8 sequences never contain those characters so they pass through untouched.
+//
+//The returned buffer belongs to the caller, the input buffers are left for the caller to release.
+public final class EnrichJsonEncoder {
+
+    private static final byte[] REG = "{\"reg\":\"".getBytes(UTF_8);
+    private static final byte[] MOT = "\",\"mot\":\"".getBytes(UTF_8);
+    private static final byte[] TAX = "\",\"tax\":\"".getBytes(UTF_8);
+    private static final byte[] END = "\"}".getBytes(UTF_8);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(UTF_8);
+    private static final int FIXED_LENGTH = REG.length + MOT.length + TAX.length + END.length;
+    //Room for a few escapes before the buffer has to grow
+    private static final int SLACK = 16;
+
+    private final DataBufferFactory bufferFactory;
+
+    public EnrichJsonEncoder(DataBufferFactory bufferFactory) {
+        this.bufferFactory = requireNonNull(bufferFactory, "bufferFactory cannot be null");
+    }
+
+    public DataBuffer encode(String reg, DataBuffer mot, DataBuffer tax) {
+        DataBuffer out = bufferFactory.allocateBuffer(
+                FIXED_LENGTH + reg.length() + mot.readableByteCount() + tax.readableByteCount() + SLACK);
+        try {
+            out.write(REG);
+            writeEscaped(out, reg);
+            out.write(MOT);
+            writeEscaped(out, mot);
+            out.write(TAX);
+            writeEscaped(out, tax);
+            out.write(END);
+            return out;
+        } catch (RuntimeException e) {
+            DataBufferUtils.release(out);
+            throw e;
+        }
+    }
+
+    public DataBuffer encode(String reg, String mot, String tax) {
+        DataBuffer out = bufferFactory.allocateBuffer(FIXED_LENGTH + reg.length() + mot.length() + tax.length() + SLACK);
+        try {
+            out.write(REG);
+            writeEscaped(out, reg);
+            out.write(MOT);
+            writeEscaped(out, mot);
+            out.write(TAX);
+            writeEscaped(out, tax);
+            out.write(END);
+            return out;
+        } catch (RuntimeException e) {
+            DataBufferUtils.release(out);
+            throw e;
+        }
+    }
+
+    private static void writeEscaped(DataBuffer out, DataBuffer in) {
+        int start = in.readPosition();
+        int end = in.writePosition();
+        int run = start;
+        for (int i = start; i < end; i++) {
+            byte b = in.getByte(i);
+            if (needsEscape(b)) {
+                if (i > run) {
+                    out.write(in.asByteBuffer(run, i - run));
+                }
+                escape(out, b);
+                run = i + 1;
+            }
+        }
+        if (end > run) {
+            out.write(in.asByteBuffer(run, end - run));
+        }
+    }
+
+    private static void writeEscaped(DataBuffer out, String in) {
+        int run = 0;
+        for (int i = 0; i < in.length(); i++) {
+            char c = in.charAt(i);
+            if (c < 0x80 && needsEscape((byte) c)) {
+                if (i > run) {
+                    out.write(in.subSequence(run, i), UTF_8);
+                }
+                escape(out, (byte) c);
+                run = i + 1;
+            }
+        }
+        if (in.length() > run) {
+            out.write(run == 0 ? in : in.subSequence(run, in.length()), UTF_8);
+        }
+    }
+
+    private static boolean needsEscape(byte b) {
+        return b == '"' || b == '\\' || (b >= 0 && b < 0x20);
+    }
+
+    private static void escape(DataBuffer out, byte b) {
+        out.write((byte) '\\');
+        switch (b) {
+            case '"': out.write((byte) '"'); break;
+            case '\\': out.write((byte) '\\'); break;
+            case '\n': out.write((byte) 'n'); break;
+            case '\r': out.write((byte) 'r'); break;
+            case '\t': out.write((byte) 't'); break;
+            default:
+                out.write((byte) 'u').write((byte) '0').write((byte) '0')
+                    .write(HEX[(b >> 4) & 0xF]).write(HEX[b & 0xF]);
+        }
+    }
+}
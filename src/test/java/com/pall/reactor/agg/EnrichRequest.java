@@ -0,0 +1,27 @@
+package com.pall.reactor.agg;
+
+//One MOT and TAX pair waiting to be enriched, serialised by Jackson as {"reg":..,"mot":..,"tax":..}
+public class EnrichRequest {
+
+    private final String reg;
+    private final String mot;
+    private final String tax;
+
+    public EnrichRequest(String reg, String mot, String tax) {
+        this.reg = reg;
+        this.mot = mot;
+        this.tax = tax;
+    }
+
+    public String getReg() {
+        return reg;
+    }
+
+    public String getMot() {
+        return mot;
+    }
+
+    public String getTax() {
+        return tax;
+    }
+}
@@ -0,0 +1,143 @@
+package com.pall.reactor.agg;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Mono;
+
+//Hedged requests: if a call has not answered by the time most calls have (the given percentile of the
+//recent latencies) an identical second call is made. Whichever signals first wins and the other one is
+//cancelled. Only use it for idempotent calls.
+//
+//Hedges are capped at maxHedgeRate of all calls so a downstream that is slow across the board is not
+//sent twice the traffic. Until minSamples latencies have been seen the initial delay is used.
+public class Hedger {
+
+    private final LatencyWindow window;
+    private final double maxHedgeRate;
+    private final int minSamples;
+    private final Duration initialDelay;
+    private final Duration minDelay;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private Hedger(Builder builder) {
+        this.window = new LatencyWindow(builder.windowSize, builder.percentile);
+        this.maxHedgeRate = builder.maxHedgeRate;
+        this.minSamples = builder.minSamples;
+        this.initialDelay = builder.initialDelay;
+        this.minDelay = builder.minDelay;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public <T> Mono<T> hedge(Supplier<? extends Mono<T>> call) {
+        requireNonNull(call, "call cannot be null");
+        return Mono.defer(() -> {
+            calls.increment();
+            Mono<T> primary = timed(call);
+            Mono<T> backup = Mono.delay(hedgeDelay())
+                    .flatMap(tick -> {
+                        if (!tryHedge()) {
+                            //Never signal so the primary is left to answer on its own
+                            return Mono.<T>never();
+                        }
+                        return timed(call).doOnNext(v -> hedgeWins.increment());
+                    });
+            return Mono.firstWithSignal(primary, backup);
+        });
+    }
+
+    private <T> Mono<T> timed(Supplier<? extends Mono<T>> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.get().doOnNext(v -> window.record(System.nanoTime() - start));
+        });
+    }
+
+    private boolean tryHedge() {
+        if (hedges.sum() >= maxHedgeRate * calls.sum()) {
+            return false;
+        }
+        hedges.increment();
+        return true;
+    }
+
+    Duration hedgeDelay() {
+        if (window.count() < minSamples) {
+            return initialDelay;
+        }
+        long nanos = window.percentileNanos();
+        return nanos < minDelay.toNanos() ? minDelay : Duration.ofNanos(nanos);
+    }
+
+    public long calls() {
+        return calls.sum();
+    }
+
+    public long hedges() {
+        return hedges.sum();
+    }
+
+    //Hedges that answered before the call they were backing up
+    public long hedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    public static class Builder {
+        private double percentile = 95;
+        private int windowSize = 1_000;
+        private int minSamples = 20;
+        private double maxHedgeRate = 0.1;
+        private Duration initialDelay = Duration.ofMillis(100);
+        private Duration minDelay = Duration.ofMillis(1);
+
+        private Builder() {
+        }
+
+        public Builder percentile(double percentile) {
+            if (percentile <= 0 || percentile > 100) { throw new IllegalArgumentException("percentile must be in (0, 100]"); }
+            this.percentile = percentile;
+            return this;
+        }
+
+        public Builder windowSize(int windowSize) {
+            if (windowSize <= 0) { throw new IllegalArgumentException("windowSize must be positive"); }
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        public Builder minSamples(int minSamples) {
+            if (minSamples < 0) { throw new IllegalArgumentException("minSamples cannot be negative"); }
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        //Fraction of calls that may be hedged, 0.1 allows one hedge for every ten calls
+        public Builder maxHedgeRate(double maxHedgeRate) {
+            if (maxHedgeRate < 0 || maxHedgeRate > 1) { throw new IllegalArgumentException("maxHedgeRate must be in [0, 1]"); }
+            this.maxHedgeRate = maxHedgeRate;
+            return this;
+        }
+
+        public Builder initialDelay(Duration initialDelay) {
+            this.initialDelay = requireNonNull(initialDelay, "initialDelay cannot be null");
+            return this;
+        }
+
+        public Builder minDelay(Duration minDelay) {
+            this.minDelay = requireNonNull(minDelay, "minDelay cannot be null");
+            return this;
+        }
+
+        public Hedger build() {
+            return new Hedger(this);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.pall.reactor.agg;
+
+import java.util.Arrays;
+
+//The most recent latencies in a fixed size ring, from which a percentile can be read. The percentile is
+//worked out again only every few samples rather than sorting the window on every read.
+public class LatencyWindow {
+
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private final long[] samples;
+    private final double percentile;
+    private int next;
+    private int count;
+    private int sinceComputed;
+    private long cachedNanos = -1;
+
+    public LatencyWindow(int size, double percentile) {
+        if (size <= 0) { throw new IllegalArgumentException("size must be positive"); }
+        if (percentile <= 0 || percentile > 100) { throw new IllegalArgumentException("percentile must be in (0, 100]"); }
+        this.samples = new long[size];
+        this.percentile = percentile;
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = next + 1 == samples.length ? 0 : next + 1;
+        if (count < samples.length) {
+            count++;
+        }
+        sinceComputed++;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    //-1 until there is at least one sample
+    public synchronized long percentileNanos() {
+        if (count == 0) {
+            return -1;
+        }
+        if (cachedNanos < 0 || sinceComputed >= RECOMPUTE_EVERY) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            cachedNanos = sorted[Math.max(0, index)];
+            sinceComputed = 0;
+        }
+        return cachedNanos;
+    }
+}
@@ -0,0 +1,31 @@
+package com.pall.reactor.agg;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+//Keeps hold of the live pool gauges Reactor Netty hands over when a pool is created for a remote
+//address, so they can be read without pulling Micrometer in. The values are read straight from the
+//pool each time so a snapshot is always current.
+public class PoolMetricsRegistrar implements ConnectionProvider.MeterRegistrar {
+
+    private final Map<SocketAddress, ConnectionPoolMetrics> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        pools.put(remoteAddress, metrics);
+    }
+
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        pools.remove(remoteAddress);
+    }
+
+    public Map<SocketAddress, ConnectionPoolMetrics> pools() {
+        return Collections.unmodifiableMap(pools);
+    }
+}
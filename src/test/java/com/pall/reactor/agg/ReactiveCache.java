@@ -0,0 +1,130 @@
+package com.pall.reactor.agg;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import reactor.core.publisher.Mono;
+
+//Non-blocking cache in front of a Mono returning lookup, backed by a Caffeine AsyncLoadingCache so
+//eviction is W-TinyLFU bounded by entry count or weight. Values are held as futures: concurrent misses
+//for a key share one load, failed or empty loads are not kept, and once refreshAfterWrite has passed the
+//stale value is served while a reload runs in the background.
+public class ReactiveCache<K, V> {
+
+    private final AsyncLoadingCache<K, V> cache;
+    private final Function<K, Mono<V>> loader;
+
+    private ReactiveCache(Builder<K, V> builder) {
+        this.loader = builder.loader;
+        @SuppressWarnings("unchecked")
+        Caffeine<K, V> caffeine = (Caffeine<K, V>) (Caffeine<?, ?>) Caffeine.newBuilder().recordStats();
+        if (builder.expireAfterWrite != null) {
+            caffeine.expireAfterWrite(builder.expireAfterWrite);
+        }
+        if (builder.refreshAfterWrite != null) {
+            caffeine.refreshAfterWrite(builder.refreshAfterWrite);
+        }
+        if (builder.weigher != null) {
+            caffeine.maximumWeight(builder.maximumWeight).weigher(builder.weigher);
+        } else if (builder.maximumSize >= 0) {
+            caffeine.maximumSize(builder.maximumSize);
+        }
+        if (builder.ticker != null) {
+            caffeine.ticker(builder.ticker);
+        }
+        if (builder.executor != null) {
+            caffeine.executor(builder.executor);
+        }
+        this.cache = caffeine.buildAsync((key, executor) -> loader.apply(key).toFuture());
+    }
+
+    public static <K, V> Builder<K, V> builder(Function<K, Mono<V>> loader) {
+        return new Builder<>(loader);
+    }
+
+    public Mono<V> get(K key) {
+        requireNonNull(key, "key cannot be null");
+        //A load is shared by every caller waiting on the key, so it runs without any one caller's context
+        //(and so without its Deadline). Callers bound their own wait on the returned Mono instead.
+        //A copy so a cancelled caller does not cancel the load the other callers and the cache are waiting on.
+        return Mono.defer(() -> Mono.fromFuture(cache.get(key).copy()));
+    }
+
+    public void invalidate(K key) {
+        cache.synchronous().invalidate(key);
+    }
+
+    public long estimatedSize() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    //Hit, miss, load and eviction counts since the cache was built
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    public static class Builder<K, V> {
+        private final Function<K, Mono<V>> loader;
+        private Duration expireAfterWrite;
+        private Duration refreshAfterWrite;
+        private long maximumSize = -1;
+        private long maximumWeight = -1;
+        private Weigher<? super K, ? super V> weigher;
+        private Ticker ticker;
+        private Executor executor;
+
+        private Builder(Function<K, Mono<V>> loader) {
+            this.loader = requireNonNull(loader, "loader cannot be null");
+        }
+
+        public Builder<K, V> expireAfterWrite(Duration expireAfterWrite) {
+            this.expireAfterWrite = requireNonNull(expireAfterWrite, "expireAfterWrite cannot be null");
+            return this;
+        }
+
+        //Entries older than this are reloaded in the background on their next read, should be shorter than the TTL
+        public Builder<K, V> refreshAfterWrite(Duration refreshAfterWrite) {
+            this.refreshAfterWrite = requireNonNull(refreshAfterWrite, "refreshAfterWrite cannot be null");
+            return this;
+        }
+
+        public Builder<K, V> maximumSize(long maximumSize) {
+            if (maximumSize < 0) { throw new IllegalArgumentException("maximumSize cannot be negative"); }
+            if (weigher != null) { throw new IllegalStateException("maximumWeight already set"); }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        public Builder<K, V> maximumWeight(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+            if (maximumWeight < 0) { throw new IllegalArgumentException("maximumWeight cannot be negative"); }
+            if (maximumSize >= 0) { throw new IllegalStateException("maximumSize already set"); }
+            this.maximumWeight = maximumWeight;
+            this.weigher = requireNonNull(weigher, "weigher cannot be null");
+            return this;
+        }
+
+        public Builder<K, V> ticker(Ticker ticker) {
+            this.ticker = requireNonNull(ticker, "ticker cannot be null");
+            return this;
+        }
+
+        //Where refreshes and maintenance run, ForkJoinPool.commonPool() by default
+        public Builder<K, V> executor(Executor executor) {
+            this.executor = requireNonNull(executor, "executor cannot be null");
+            return this;
+        }
+
+        public ReactiveCache<K, V> build() {
+            return new ReactiveCache<>(this);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.pall.reactor.agg;
+
+import java.util.Objects;
+
+//Identifies a lookup of one registration against one downstream
+final class RequestKey {
+
+    private final Endpoint endpoint;
+    private final String reg;
+
+    RequestKey(Endpoint endpoint, String reg) {
+        this.endpoint = endpoint;
+        this.reg = reg;
+    }
+
+    Endpoint endpoint() {
+        return endpoint;
+    }
+
+    String reg() {
+        return reg;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey other = (RequestKey) o;
+        return endpoint == other.endpoint && reg.equals(other.reg);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(endpoint, reg);
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + ":" + reg;
+    }
+}
@@ -0,0 +1,76 @@
+package com.pall.reactor.agg;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+//Coalesces concurrent calls for the same key onto one in-flight Mono. The first subscriber for a key
+//starts the call, anyone arriving while it is still running shares its result, and the entry is dropped
+//as soon as it terminates so the next caller goes back to the downstream.
+//
+//The shared call is reference counted: one caller cancelling leaves it running for the others, the last
+//one leaving cancels it so no capacity is spent on an answer nobody is waiting for. It runs with an empty
+//context rather than the first subscriber's, so one caller's Deadline cannot fail it for everyone. Callers
+//bound their own wait with their own Deadline instead, and as each leaves at its deadline the call lives
+//exactly as long as the longest remaining one among them (or for as long as a caller without a deadline
+//waits). The downstream gets no deadline header as later callers may extend the budget after it is sent.
+public class SingleFlight<K, V> {
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public Mono<V> execute(K key, Supplier<? extends Mono<V>> call) {
+        requireNonNull(key, "key cannot be null");
+        requireNonNull(call, "call cannot be null");
+        return Mono.defer(() -> {
+            Mono<V> existing = inFlight.get(key);
+            if (existing == null) {
+                //Assembling the shared Mono is cheap and does not start the call, so losing the race costs nothing
+                Mono<V> flight = flight(key, call);
+                existing = inFlight.putIfAbsent(key, flight);
+                if (existing == null) {
+                    calls.increment();
+                    return flight;
+                }
+            }
+            coalesced.increment();
+            return existing;
+        });
+    }
+
+    private Mono<V> flight(K key, Supplier<? extends Mono<V>> call) {
+        //Only remove our own entry, a later flight for the same key may already have replaced it
+        AtomicReference<Mono<V>> self = new AtomicReference<>();
+        Mono<V> shared = Mono.defer(call)
+                .contextWrite(context -> Context.empty())
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .flux()
+                .publish()
+                .refCount()
+                .next();
+        self.set(shared);
+        return shared;
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    //Number of calls actually made to the downstream
+    public long calls() {
+        return calls.sum();
+    }
+
+    //Number of callers that were handed an already running call
+    public long coalesced() {
+        return coalesced.sum();
+    }
+}
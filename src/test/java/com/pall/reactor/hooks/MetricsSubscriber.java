@@ -0,0 +1,109 @@
+package com.pall.reactor.hooks;
+
+import org.reactivestreams.Subscription;
+
+import reactor.core.CoreSubscriber;
+import reactor.core.Fuseable;
+import reactor.util.context.Context;
+
+//Sits between an operator and its downstream counting what passes through. Signals for one
+//subscription are serial (Reactive Streams rule 1.3) so the time of the previous signal is a plain field.
+//The context is passed through from downstream so context readers, such as Deadline, see no difference.
+//
+//Operators.lift keeps a Fuseable source Fuseable, so the downstream may cast what it is handed to a
+//QueueSubscription. This is one that always refuses fusion, every element then arrives through onNext.
+class MetricsSubscriber<T> implements CoreSubscriber<T>, Fuseable.QueueSubscription<T> {
+
+    private final CoreSubscriber<? super T> actual;
+    private final StepMetrics metrics;
+    private final boolean recordGaps;
+
+    private Subscription upstream;
+    private long lastSignalNanos;
+
+    MetricsSubscriber(CoreSubscriber<? super T> actual, StepMetrics metrics, boolean recordGaps) {
+        this.actual = actual;
+        this.metrics = metrics;
+        this.recordGaps = recordGaps;
+    }
+
+    @Override
+    public Context currentContext() {
+        return actual.currentContext();
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        upstream = s;
+        metrics.subscriptions.increment();
+        if (recordGaps) {
+            lastSignalNanos = System.nanoTime();
+        }
+        actual.onSubscribe(this);
+    }
+
+    @Override
+    public void onNext(T t) {
+        metrics.onNext.increment();
+        gap();
+        actual.onNext(t);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        metrics.onError.increment();
+        gap();
+        actual.onError(t);
+    }
+
+    @Override
+    public void onComplete() {
+        metrics.onComplete.increment();
+        gap();
+        actual.onComplete();
+    }
+
+    @Override
+    public void request(long n) {
+        metrics.requests.increment();
+        upstream.request(n);
+    }
+
+    @Override
+    public void cancel() {
+        metrics.cancels.increment();
+        upstream.cancel();
+    }
+
+    private void gap() {
+        if (recordGaps) {
+            long now = System.nanoTime();
+            metrics.recordGap(now - lastSignalNanos);
+            lastSignalNanos = now;
+        }
+    }
+
+    @Override
+    public int requestFusion(int requestedMode) {
+        return Fuseable.NONE;
+    }
+
+    @Override
+    public T poll() {
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+    }
+}
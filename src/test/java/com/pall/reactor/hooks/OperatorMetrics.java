@@ -0,0 +1,78 @@
+package com.pall.reactor.hooks;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.reactivestreams.Publisher;
+
+import reactor.core.Scannable;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Operators;
+
+//Counts signals, requests and cancels for every operator assembled while installed, grouped by step
+//name (map, flatMap, ...), plus a histogram of the time between signals. Only operators assembled
+//after install() are decorated as Hooks.onEachOperator runs at assembly, not subscription.
+//
+//The lifted subscriber answers requestFusion with NONE so a decorated operator no longer fuses with
+//its neighbours, which is the larger part of the cost measured by OperatorMetricsBenchmark. Install
+//with an OperatorSelector to decorate only the stages being looked at.
+public class OperatorMetrics {
+
+    public static final String HOOK_KEY = OperatorMetrics.class.getName();
+
+    private final Map<String, StepMetrics> steps = new ConcurrentHashMap<>();
+    private final boolean recordGaps;
+
+    public OperatorMetrics() {
+        this(true);
+    }
+
+    //Without gaps each signal costs one LongAdder increment and no clock read
+    public OperatorMetrics(boolean recordGaps) {
+        this.recordGaps = recordGaps;
+    }
+
+    public void install() {
+        install(OperatorSelector.all());
+    }
+
+    public void install(OperatorSelector selector) {
+        Hooks.onEachOperator(HOOK_KEY, selector.select(decorator()));
+    }
+
+    public void uninstall() {
+        Hooks.resetOnEachOperator(HOOK_KEY);
+    }
+
+    public <T> Function<? super Publisher<T>, ? extends Publisher<T>> decorator() {
+        return source -> {
+            if (!Scannable.from(source).isScanAvailable()) {
+                return source;
+            }
+            return Operators.<T, T>lift((scannable, actual) ->
+                    new MetricsSubscriber<>(actual, step(scannable.stepName()), recordGaps)).apply(source);
+        };
+    }
+
+    StepMetrics step(String stepName) {
+        return steps.computeIfAbsent(stepName, StepMetrics::new);
+    }
+
+    //Safe to call while pipelines are running, nothing is paused or reset
+    public Map<String, StepSnapshot> snapshot() {
+        Map<String, StepSnapshot> snapshot = new TreeMap<>();
+        steps.forEach((name, metrics) -> snapshot.put(name, metrics.snapshot()));
+        return snapshot;
+    }
+
+    public StepSnapshot snapshot(String stepName) {
+        StepMetrics metrics = steps.get(stepName);
+        return metrics == null ? null : metrics.snapshot();
+    }
+
+    public void clear() {
+        steps.clear();
+    }
+}
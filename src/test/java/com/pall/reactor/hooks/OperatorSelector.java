@@ -0,0 +1,143 @@
+package com.pall.reactor.hooks;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.reactivestreams.Publisher;
+
+import reactor.core.Scannable;
+import reactor.core.Scannable.Attr;
+
+//Chooses which operators a decorator is applied to. Lifting an operator hides it from its neighbours'
+//fusion, so decorating only the stages of interest leaves every other map and just at full speed.
+//
+//Rules are checked once per operator at assembly, never per subscription or signal. An operator is
+//selected when it matches any include rule (or there are none) and no exclude rule.
+public class OperatorSelector {
+
+    private static final OperatorSelector ALL = builder().build();
+
+    private final List<Predicate<Publisher<?>>> includes;
+    private final List<Predicate<Publisher<?>>> excludes;
+
+    private OperatorSelector(Builder builder) {
+        this.includes = List.copyOf(builder.includes);
+        this.excludes = List.copyOf(builder.excludes);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static OperatorSelector all() {
+        return ALL;
+    }
+
+    public boolean test(Publisher<?> operator) {
+        if (!Scannable.from(operator).isScanAvailable()) {
+            return false;
+        }
+        for (Predicate<Publisher<?>> exclude : excludes) {
+            if (exclude.test(operator)) {
+                return false;
+            }
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (Predicate<Publisher<?>> include : includes) {
+            if (include.test(operator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Unselected operators are returned as they are, not lifted
+    public <T> Function<? super Publisher<T>, ? extends Publisher<T>> select(Function<? super Publisher<T>, ? extends Publisher<T>> decorator) {
+        requireNonNull(decorator, "decorator cannot be null");
+        return source -> test(source) ? decorator.apply(source) : source;
+    }
+
+    public static class Builder {
+
+        private final List<Predicate<Publisher<?>>> includes = new ArrayList<>();
+        private final List<Predicate<Publisher<?>>> excludes = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder includeSteps(String... stepNames) {
+            includes.add(stepNamed(stepNames));
+            return this;
+        }
+
+        public Builder excludeSteps(String... stepNames) {
+            excludes.add(stepNamed(stepNames));
+            return this;
+        }
+
+        //Operator type such as Fuseable, Mono or a concrete operator class
+        public Builder includeType(Class<?> type) {
+            includes.add(ofType(type));
+            return this;
+        }
+
+        public Builder excludeType(Class<?> type) {
+            excludes.add(ofType(type));
+            return this;
+        }
+
+        //Attributes the operator does not report are null and never match, e.g. includeAttr(Attr.PREFETCH, p -> p < 32)
+        public <A> Builder includeAttr(Attr<A> attr, Predicate<? super A> predicate) {
+            includes.add(attribute(attr, predicate));
+            return this;
+        }
+
+        public <A> Builder excludeAttr(Attr<A> attr, Predicate<? super A> predicate) {
+            excludes.add(attribute(attr, predicate));
+            return this;
+        }
+
+        public Builder include(Predicate<Publisher<?>> rule) {
+            includes.add(requireNonNull(rule, "rule cannot be null"));
+            return this;
+        }
+
+        public Builder exclude(Predicate<Publisher<?>> rule) {
+            excludes.add(requireNonNull(rule, "rule cannot be null"));
+            return this;
+        }
+
+        public OperatorSelector build() {
+            return new OperatorSelector(this);
+        }
+
+        private static Predicate<Publisher<?>> stepNamed(String... stepNames) {
+            if (stepNames.length == 0) {
+                throw new IllegalArgumentException("stepNames cannot be empty");
+            }
+            Set<String> names = Set.of(stepNames);
+            return operator -> names.contains(Scannable.from(operator).stepName());
+        }
+
+        private static Predicate<Publisher<?>> ofType(Class<?> type) {
+            requireNonNull(type, "type cannot be null");
+            return type::isInstance;
+        }
+
+        private static <A> Predicate<Publisher<?>> attribute(Attr<A> attr, Predicate<? super A> predicate) {
+            requireNonNull(attr, "attr cannot be null");
+            requireNonNull(predicate, "predicate cannot be null");
+            return operator -> {
+                A value = Scannable.from(operator).scan(attr);
+                return value != null && predicate.test(value);
+            };
+        }
+    }
+}
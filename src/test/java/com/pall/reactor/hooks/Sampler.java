@@ -0,0 +1,56 @@
+package com.pall.reactor.hooks;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+//Decides whether a new subscription is traced. Called once per subscription, never per signal.
+public interface Sampler {
+
+    boolean sample();
+
+    static Sampler always() {
+        return () -> true;
+    }
+
+    static Sampler oneIn(long n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        AtomicLong count = new AtomicLong();
+        return () -> count.getAndIncrement() % n == 0;
+    }
+
+    static Sampler perSecond(double rate, int burst) {
+        return perSecond(rate, burst, System::nanoTime);
+    }
+
+    //Token bucket kept as the time the bucket is next empty (GCRA), so taking a token is a single CAS
+    //rather than a lock around a refill calculation
+    static Sampler perSecond(double rate, int burst, LongSupplier nanoClock) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        requireNonNull(nanoClock, "nanoClock cannot be null");
+        long interval = Math.max(1, (long) (1_000_000_000L / rate));
+        long tolerance = interval * (burst - 1);
+        AtomicLong theoreticalArrival = new AtomicLong(nanoClock.getAsLong());
+        return () -> {
+            long now = nanoClock.getAsLong();
+            for (;;) {
+                long current = theoreticalArrival.get();
+                long arrival = Math.max(current, now);
+                if (arrival - now > tolerance) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(current, arrival + interval)) {
+                    return true;
+                }
+            }
+        };
+    }
+}
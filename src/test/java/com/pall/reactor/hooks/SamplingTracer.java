@@ -0,0 +1,168 @@
+package com.pall.reactor.hooks;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.reactivestreams.Publisher;
+
+import reactor.core.CoreSubscriber;
+import reactor.core.Scannable;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+//Records the signal timeline of a sample of subscriptions rather than logging every signal as the
+//decorator in CrossCuttingTest does.
+//
+//Subscribing runs from the last operator back to the source, so the outermost decorated operator
+//is the first to see a subscription. It asks the Sampler once and puts the outcome in the context,
+//every operator above it (and any inner subscription made by flatMap) reads the same decision:
+//  - sampled: each operator records into one shared Trace, published when the outermost terminates
+//  - not sampled: the outermost passes signals straight through and the rest are not decorated at all
+public class SamplingTracer {
+
+    public static final String HOOK_KEY = SamplingTracer.class.getName();
+
+    private static final Object NOT_SAMPLED = new Object();
+
+    private final Object contextKey = new Object();
+    private final Sampler sampler;
+    private final int maxEvents;
+    private final int maxTraces;
+    private final Consumer<Trace> onTrace;
+
+    private final Deque<Trace> recent = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger recentSize = new AtomicInteger();
+    private final LongAdder subscriptions = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+
+    private SamplingTracer(Builder builder) {
+        this.sampler = builder.sampler;
+        this.maxEvents = builder.maxEvents;
+        this.maxTraces = builder.maxTraces;
+        this.onTrace = builder.onTrace;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public void install() {
+        install(OperatorSelector.all());
+    }
+
+    public void install(OperatorSelector selector) {
+        Hooks.onEachOperator(HOOK_KEY, selector.select(decorator()));
+    }
+
+    public void uninstall() {
+        Hooks.resetOnEachOperator(HOOK_KEY);
+    }
+
+    public <T> Function<? super Publisher<T>, ? extends Publisher<T>> decorator() {
+        return source -> {
+            if (!Scannable.from(source).isScanAvailable()) {
+                return source;
+            }
+            return Operators.<T, T>lift(this::decorate).apply(source);
+        };
+    }
+
+    <T> CoreSubscriber<? super T> decorate(Scannable operator, CoreSubscriber<? super T> actual) {
+        Context context = actual.currentContext();
+        Object decision = context.getOrDefault(contextKey, null);
+        if (decision == NOT_SAMPLED) {
+            return actual;
+        }
+        if (decision != null) {
+            return new TracingSubscriber<>(actual, (Trace) decision, operator.stepName(), context, false);
+        }
+        subscriptions.increment();
+        if (!sampler.sample()) {
+            return new UnsampledSubscriber<>(actual, context.put(contextKey, NOT_SAMPLED));
+        }
+        sampled.increment();
+        Trace trace = new Trace(maxEvents, this::publish);
+        return new TracingSubscriber<>(actual, trace, operator.stepName(), context.put(contextKey, trace), true);
+    }
+
+    private void publish(Trace trace) {
+        recent.addLast(trace);
+        if (recentSize.incrementAndGet() > maxTraces && recent.pollFirst() != null) {
+            recentSize.decrementAndGet();
+        }
+        onTrace.accept(trace);
+    }
+
+    //Most recent finished traces, oldest first
+    public List<Trace> traces() {
+        return new ArrayList<>(recent);
+    }
+
+    //Subscriptions that reached a sampling decision, inner subscriptions of a decided one are not counted
+    public long subscriptions() {
+        return subscriptions.sum();
+    }
+
+    public long sampled() {
+        return sampled.sum();
+    }
+
+    public static class Builder {
+
+        private Sampler sampler = Sampler.oneIn(100);
+        private int maxEvents = 1_000;
+        private int maxTraces = 100;
+        private Consumer<Trace> onTrace = trace -> {};
+
+        private Builder() {
+        }
+
+        public Builder sampler(Sampler sampler) {
+            this.sampler = requireNonNull(sampler, "sampler cannot be null");
+            return this;
+        }
+
+        public Builder oneIn(long n) {
+            return sampler(Sampler.oneIn(n));
+        }
+
+        public Builder perSecond(double rate, int burst) {
+            return sampler(Sampler.perSecond(rate, burst));
+        }
+
+        //Events past this are counted as dropped, a long lived Flux would otherwise grow its trace forever
+        public Builder maxEvents(int maxEvents) {
+            if (maxEvents <= 0) {
+                throw new IllegalArgumentException("maxEvents must be positive");
+            }
+            this.maxEvents = maxEvents;
+            return this;
+        }
+
+        public Builder maxTraces(int maxTraces) {
+            if (maxTraces <= 0) {
+                throw new IllegalArgumentException("maxTraces must be positive");
+            }
+            this.maxTraces = maxTraces;
+            return this;
+        }
+
+        public Builder onTrace(Consumer<Trace> onTrace) {
+            this.onTrace = requireNonNull(onTrace, "onTrace cannot be null");
+            return this;
+        }
+
+        public SamplingTracer build() {
+            return new SamplingTracer(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.pall.reactor.hooks;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//Live counters for every subscription to operators sharing one step name. LongAdders are striped per
+//core so subscribers on different threads do not contend on one cache line, reading them sums the
+//stripes without stopping anyone.
+//
+//The time between consecutive signals of a subscription goes into a base 2 histogram: bucket i holds
+//gaps of [2^i, 2^(i+1)) nanoseconds, so one increment records a sample whatever its size.
+public class StepMetrics {
+
+    static final int BUCKETS = 64;
+
+    final LongAdder onNext = new LongAdder();
+    final LongAdder onError = new LongAdder();
+    final LongAdder onComplete = new LongAdder();
+    final LongAdder requests = new LongAdder();
+    final LongAdder cancels = new LongAdder();
+    final LongAdder subscriptions = new LongAdder();
+    private final LongAdder[] gapNanos = new LongAdder[BUCKETS];
+
+    private final String stepName;
+
+    StepMetrics(String stepName) {
+        this.stepName = stepName;
+        for (int i = 0; i < BUCKETS; i++) {
+            gapNanos[i] = new LongAdder();
+        }
+    }
+
+    void recordGap(long nanos) {
+        gapNanos[nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)].increment();
+    }
+
+    public String stepName() {
+        return stepName;
+    }
+
+    public StepSnapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = gapNanos[i].sum();
+        }
+        return new StepSnapshot(stepName, subscriptions.sum(), onNext.sum(), onError.sum(), onComplete.sum(),
+                requests.sum(), cancels.sum(), buckets);
+    }
+}
@@ -0,0 +1,86 @@
+package com.pall.reactor.hooks;
+
+//Counts for one step name at the time StepMetrics.snapshot() was called. The counters are read one
+//after another while signals keep arriving so the values are each exact but not a single instant.
+public class StepSnapshot {
+
+    private final String stepName;
+    private final long subscriptions;
+    private final long onNext;
+    private final long onError;
+    private final long onComplete;
+    private final long requests;
+    private final long cancels;
+    private final long[] gapBuckets;
+
+    StepSnapshot(String stepName, long subscriptions, long onNext, long onError, long onComplete, long requests, long cancels, long[] gapBuckets) {
+        this.stepName = stepName;
+        this.subscriptions = subscriptions;
+        this.onNext = onNext;
+        this.onError = onError;
+        this.onComplete = onComplete;
+        this.requests = requests;
+        this.cancels = cancels;
+        this.gapBuckets = gapBuckets;
+    }
+
+    public String stepName() {
+        return stepName;
+    }
+
+    public long subscriptions() {
+        return subscriptions;
+    }
+
+    public long onNext() {
+        return onNext;
+    }
+
+    public long onError() {
+        return onError;
+    }
+
+    public long onComplete() {
+        return onComplete;
+    }
+
+    public long requests() {
+        return requests;
+    }
+
+    public long cancels() {
+        return cancels;
+    }
+
+    public long gapSamples() {
+        long total = 0;
+        for (long count : gapBuckets) {
+            total += count;
+        }
+        return total;
+    }
+
+    //Upper bound of the bucket holding the percentile, so accurate to within a factor of two. -1 when there are no samples.
+    public long gapNanosAtPercentile(double percentile) {
+        long total = gapSamples();
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < gapBuckets.length; i++) {
+            seen += gapBuckets[i];
+            if (seen >= rank) {
+                return i == 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s subscriptions=%d onNext=%d onError=%d onComplete=%d requests=%d cancels=%d gap p50=%dns p99=%dns",
+                stepName, subscriptions, onNext, onError, onComplete, requests, cancels,
+                gapNanosAtPercentile(50), gapNanosAtPercentile(99));
+    }
+}
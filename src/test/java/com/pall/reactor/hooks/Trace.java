@@ -0,0 +1,70 @@
+package com.pall.reactor.hooks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import reactor.core.publisher.SignalType;
+
+//Signal timeline of one sampled subscription across every decorated operator it passes through,
+//including inner subscriptions of flatMap and friends as they inherit the context. Operators after a
+//publishOn record from other threads so events go into a concurrent queue, capped at maxEvents.
+public class Trace {
+
+    private final long startNanos = System.nanoTime();
+    private final Queue<TraceEvent> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final int maxEvents;
+    private final Consumer<Trace> onFinish;
+
+    Trace(int maxEvents, Consumer<Trace> onFinish) {
+        this.maxEvents = maxEvents;
+        this.onFinish = onFinish;
+    }
+
+    void record(String stepName, SignalType signal) {
+        if (size.incrementAndGet() > maxEvents) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        events.offer(new TraceEvent(stepName, signal, System.nanoTime() - startNanos, Thread.currentThread().getName()));
+    }
+
+    //Called by the outermost decorated operator when it terminates or is cancelled
+    void finish() {
+        if (finished.compareAndSet(false, true)) {
+            onFinish.accept(this);
+        }
+    }
+
+    public boolean isFinished() {
+        return finished.get();
+    }
+
+    public List<TraceEvent> events() {
+        return new ArrayList<>(events);
+    }
+
+    public int dropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Trace");
+        if (dropped.get() > 0) {
+            sb.append(" (").append(dropped.get()).append(" events dropped)");
+        }
+        for (TraceEvent event : events) {
+            sb.append(System.lineSeparator()).append(event);
+        }
+        return sb.toString();
+    }
+}
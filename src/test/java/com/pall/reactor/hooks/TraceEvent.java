@@ -0,0 +1,40 @@
+package com.pall.reactor.hooks;
+
+import reactor.core.publisher.SignalType;
+
+//One signal seen by one operator of a sampled subscription, offset from when the trace started
+public class TraceEvent {
+
+    private final String stepName;
+    private final SignalType signal;
+    private final long offsetNanos;
+    private final String thread;
+
+    TraceEvent(String stepName, SignalType signal, long offsetNanos, String thread) {
+        this.stepName = stepName;
+        this.signal = signal;
+        this.offsetNanos = offsetNanos;
+        this.thread = thread;
+    }
+
+    public String stepName() {
+        return stepName;
+    }
+
+    public SignalType signal() {
+        return signal;
+    }
+
+    public long offsetNanos() {
+        return offsetNanos;
+    }
+
+    public String thread() {
+        return thread;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%10.3fms %-12s %-14s [%s]", offsetNanos / 1_000_000.0, signal, stepName, thread);
+    }
+}
@@ -0,0 +1,105 @@
+package com.pall.reactor.hooks;
+
+import org.reactivestreams.Subscription;
+
+import reactor.core.CoreSubscriber;
+import reactor.core.Fuseable;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+
+//Records every signal of a sampled subscription passing one operator. The outermost one (root) put the
+//trace in the context for the operators above it and finishes the trace when the subscription ends.
+//Like MetricsSubscriber it is a QueueSubscription that refuses fusion, as a fuseable downstream casts to one.
+class TracingSubscriber<T> implements CoreSubscriber<T>, Fuseable.QueueSubscription<T> {
+
+    private final CoreSubscriber<? super T> actual;
+    private final Trace trace;
+    private final String stepName;
+    private final Context context;
+    private final boolean root;
+
+    private Subscription upstream;
+
+    TracingSubscriber(CoreSubscriber<? super T> actual, Trace trace, String stepName, Context context, boolean root) {
+        this.actual = actual;
+        this.trace = trace;
+        this.stepName = stepName;
+        this.context = context;
+        this.root = root;
+    }
+
+    @Override
+    public Context currentContext() {
+        return context;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        upstream = s;
+        trace.record(stepName, SignalType.ON_SUBSCRIBE);
+        actual.onSubscribe(this);
+    }
+
+    @Override
+    public void onNext(T t) {
+        trace.record(stepName, SignalType.ON_NEXT);
+        actual.onNext(t);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        trace.record(stepName, SignalType.ON_ERROR);
+        actual.onError(t);
+        if (root) {
+            trace.finish();
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        trace.record(stepName, SignalType.ON_COMPLETE);
+        actual.onComplete();
+        if (root) {
+            trace.finish();
+        }
+    }
+
+    @Override
+    public void request(long n) {
+        trace.record(stepName, SignalType.REQUEST);
+        upstream.request(n);
+    }
+
+    @Override
+    public void cancel() {
+        trace.record(stepName, SignalType.CANCEL);
+        upstream.cancel();
+        if (root) {
+            trace.finish();
+        }
+    }
+
+    @Override
+    public int requestFusion(int requestedMode) {
+        return Fuseable.NONE;
+    }
+
+    @Override
+    public T poll() {
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+    }
+}
@@ -0,0 +1,46 @@
+package com.pall.reactor.hooks;
+
+import org.reactivestreams.Subscription;
+
+import reactor.core.CoreSubscriber;
+import reactor.util.context.Context;
+
+//Outermost operator of a subscription that was not sampled. It only marks the context so operators
+//above it skip decoration altogether. The upstream Subscription is handed on as it is rather than
+//this, so a fuseable downstream gets the upstream's own QueueSubscription and fuses with it as if
+//nothing was in between.
+class UnsampledSubscriber<T> implements CoreSubscriber<T> {
+
+    private final CoreSubscriber<? super T> actual;
+    private final Context context;
+
+    UnsampledSubscriber(CoreSubscriber<? super T> actual, Context context) {
+        this.actual = actual;
+        this.context = context;
+    }
+
+    @Override
+    public Context currentContext() {
+        return context;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        actual.onSubscribe(s);
+    }
+
+    @Override
+    public void onNext(T t) {
+        actual.onNext(t);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        actual.onError(t);
+    }
+
+    @Override
+    public void onComplete() {
+        actual.onComplete();
+    }
+}
@@ -0,0 +1,125 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Subscriber;
+
+//Emits the elements of an array. The subscription supports SYNC fusion so a fused downstream can
+//poll the array directly without going through request/onNext.
+public class MyArrayFlux<T> extends MyFlux<T> {
+
+    private final T[] array;
+
+    public MyArrayFlux(T[] array) {
+        super();
+        this.array = requireNonNull(array, "array cannot be null");
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> targetSubscriptionSubscriber) {
+        ArraySubscription<T> subscription = new ArraySubscription<>(targetSubscriptionSubscriber, array);
+        targetSubscriptionSubscriber.onSubscribe(subscription);
+        if (array.length == 0 && !subscription.fused && !subscription.cancelled) {
+            targetSubscriptionSubscriber.onComplete();
+        }
+    }
+
+    static final class ArraySubscription<T> implements MyQueueSubscription<T> {
+
+        private final Subscriber<? super T> actual;
+        private final T[] array;
+        private final AtomicLong requested = new AtomicLong();
+        private int index;
+        private volatile boolean cancelled;
+        private boolean fused;
+
+        ArraySubscription(Subscriber<? super T> actual, T[] array) {
+            this.actual = actual;
+            this.array = array;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n < 0) { throw new RuntimeException("Publisher request must be positive"); }
+            if (n == 0 || fused) {
+                return;
+            }
+            if (MyOperators.addCap(requested, n) == 0) {
+                emit(n);
+            }
+        }
+
+        //Only one thread emits at a time, whoever moved requested away from zero
+        private void emit(long n) {
+            int length = array.length;
+            long emitted = 0;
+            int i = index;
+            for (;;) {
+                while (emitted != n && i != length) {
+                    if (cancelled) {
+                        return;
+                    }
+                    actual.onNext(requireNonNull(array[i], "array contains a null element"));
+                    i++;
+                    emitted++;
+                }
+                if (i == length) {
+                    if (!cancelled) {
+                        actual.onComplete();
+                    }
+                    return;
+                }
+                n = requested.get();
+                if (n == emitted) {
+                    index = i;
+                    n = requested.addAndGet(-emitted);
+                    if (n == 0) {
+                        return;
+                    }
+                    emitted = 0;
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int requestFusion(int requestedMode) {
+            if ((requestedMode & SYNC) != 0) {
+                fused = true;
+                return SYNC;
+            }
+            return NONE;
+        }
+
+        @Override
+        public T poll() {
+            int i = index;
+            if (i == array.length) {
+                return null;
+            }
+            index = i + 1;
+            return requireNonNull(array[i], "array contains a null element");
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return index == array.length;
+        }
+
+        @Override
+        public int size() {
+            return array.length - index;
+        }
+
+        @Override
+        public void clear() {
+            index = array.length;
+        }
+    }
+}
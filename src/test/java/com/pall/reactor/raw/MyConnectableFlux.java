@@ -0,0 +1,267 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Raw version of the ConnectableFlux returned by Flux.publish(). The source is subscribed to once, on
+//connect(), however many subscribers there are.
+//
+//Elements are written once into a single ring buffer shared by every subscriber and each subscriber
+//keeps its own read cursor into it, in the style of the Disruptor, so adding a subscriber costs a
+//cursor rather than another subscription to the source. A slot is only reused once the slowest
+//subscriber has read it, which gates the demand sent upstream: the source is asked for more in
+//batches once 75% of the buffer has been freed. Until the first subscriber arrives the buffer fills
+//and the source waits, as with Reactor's publish.
+public class MyConnectableFlux<T> extends MyFlux<T> {
+
+    private final MyFlux<T> sourcePublisher;
+    private final PublishMain<T> main;
+    private final AtomicBoolean connected = new AtomicBoolean();
+
+    public MyConnectableFlux(MyFlux<T> sourcePublisher, int bufferSize) {
+        super();
+        if (bufferSize <= 0) { throw new IllegalArgumentException("bufferSize must be positive"); }
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.main = new PublishMain<>(bufferSize);
+    }
+
+    public void connect() {
+        if (connected.compareAndSet(false, true)) {
+            sourcePublisher.subscribe(main);
+        }
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> targetSubscriptionSubscriber) {
+        PublishInner<T> inner = new PublishInner<>(main, targetSubscriptionSubscriber);
+        main.add(inner);
+        targetSubscriptionSubscriber.onSubscribe(inner);
+        main.drain();
+    }
+
+    static final class PublishMain<T> implements Subscriber<T> {
+
+        @SuppressWarnings("rawtypes")
+        private static final PublishInner[] EMPTY = new PublishInner[0];
+
+        private final AtomicReferenceArray<T> buffer;
+        private final int mask;
+        private final int limit;
+
+        private final AtomicReference<PublishInner<T>[]> inners;
+        private final AtomicInteger wip = new AtomicInteger();
+        //Index of the next slot the source will write, only written by the source's thread
+        private final AtomicLong produced = new AtomicLong();
+
+        private volatile Subscription upstream;
+        private volatile boolean done;
+        private Throwable error;
+
+        //Only touched in drainLoop
+        private long head; //oldest slot still unread by at least one subscriber
+        private long upstreamRequested;
+
+        @SuppressWarnings("unchecked")
+        PublishMain(int bufferSize) {
+            int capacity = bufferSize == 1 ? 1 : Integer.highestOneBit(bufferSize - 1) << 1;
+            this.buffer = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+            this.limit = capacity - (capacity >> 2);
+            this.inners = new AtomicReference<>(EMPTY);
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            upstream = s;
+            drain();
+        }
+
+        @Override
+        public void onNext(T element) {
+            if (done) {
+                return;
+            }
+            long index = produced.get();
+            if (buffer.get((int) index & mask) != null) {
+                upstream.cancel();
+                onError(new IllegalStateException("Buffer is full: more elements published than requested"));
+                return;
+            }
+            buffer.lazySet((int) index & mask, element);
+            produced.set(index + 1);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            drain();
+        }
+
+        void add(PublishInner<T> inner) {
+            for (;;) {
+                PublishInner<T>[] current = inners.get();
+                PublishInner<T>[] next = newArray(current.length + 1);
+                System.arraycopy(current, 0, next, 0, current.length);
+                next[current.length] = inner;
+                if (inners.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+
+        //Only called from drainLoop, the only other writer is add
+        private void remove(PublishInner<T> inner) {
+            for (;;) {
+                PublishInner<T>[] current = inners.get();
+                int index = -1;
+                for (int i = 0; i < current.length; i++) {
+                    if (current[i] == inner) {
+                        index = i;
+                        break;
+                    }
+                }
+                if (index < 0) {
+                    return;
+                }
+                PublishInner<T>[] next = newArray(current.length - 1);
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+                if (inners.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                boolean d = done;
+                long p = produced.get();
+                PublishInner<T>[] current = inners.get();
+
+                long slowest = Long.MAX_VALUE;
+                for (PublishInner<T> inner : current) {
+                    if (inner.cursor < 0) {
+                        //Joins at the oldest element still held
+                        inner.cursor = head;
+                    }
+                    if (inner.cancelled) {
+                        remove(inner);
+                        continue;
+                    }
+                    long cursor = inner.cursor;
+                    long r = inner.requested.get();
+                    long emitted = 0;
+                    while (cursor != p && emitted != r && !inner.cancelled) {
+                        inner.actual.onNext(buffer.get((int) cursor & mask));
+                        cursor++;
+                        emitted++;
+                    }
+                    inner.cursor = cursor;
+                    if (emitted != 0 && r != Long.MAX_VALUE) {
+                        inner.requested.addAndGet(-emitted);
+                    }
+                    if (inner.cancelled) {
+                        remove(inner);
+                        continue;
+                    }
+                    if (d && cursor == p) {
+                        remove(inner);
+                        if (error != null) {
+                            inner.actual.onError(error);
+                        } else {
+                            inner.actual.onComplete();
+                        }
+                        continue;
+                    }
+                    slowest = Math.min(slowest, cursor);
+                }
+
+                //Free the slots every subscriber has read
+                if (slowest != Long.MAX_VALUE && slowest > head) {
+                    for (long i = head; i < slowest; i++) {
+                        buffer.lazySet((int) i & mask, null);
+                    }
+                    head = slowest;
+                }
+
+                Subscription s = upstream;
+                if (s != null && !d) {
+                    long free = (mask + 1) - (upstreamRequested - head);
+                    if (free >= limit) {
+                        upstreamRequested += free;
+                        s.request(free);
+                    }
+                }
+
+                int w = wip.get();
+                if (missed == w) {
+                    missed = wip.addAndGet(-missed);
+                    if (missed == 0) {
+                        return;
+                    }
+                } else {
+                    missed = w;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private PublishInner<T>[] newArray(int length) {
+            return length == 0 ? EMPTY : new PublishInner[length];
+        }
+    }
+
+    static final class PublishInner<T> implements Subscription {
+
+        private final PublishMain<T> parent;
+        final Subscriber<? super T> actual;
+        final AtomicLong requested = new AtomicLong();
+        long cursor = -1; //only touched in the parent's drain loop
+        volatile boolean cancelled;
+
+        PublishInner(PublishMain<T> parent, Subscriber<? super T> actual) {
+            this.parent = parent;
+            this.actual = actual;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) { throw new RuntimeException("Publisher request must be positive"); }
+            MyOperators.addCap(requested, n);
+            parent.drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            parent.drain();
+        }
+    }
+
+}
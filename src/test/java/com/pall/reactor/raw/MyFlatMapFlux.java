@@ -0,0 +1,306 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Maps each element to an inner Publisher and merges what the inners emit, in the order it arrives.
+//
+//At most maxConcurrency inners are subscribed at once: the upstream is asked for maxConcurrency
+//elements and for one more each time an inner completes. Every inner gets its own
+//MySpscArrayQueue of prefetch elements (see MyInnerSubscriber) and requests more in batches once 75%
+//of its prefetch has been emitted downstream.
+//The inners are merged by a single work-in-progress drain loop so no lock is taken and onNext is
+//never called concurrently even though inners emit from different threads.
+public class MyFlatMapFlux<T, R> extends MyFlux<R> {
+
+    private final MyFlux<T> sourcePublisher;
+    private final Function<? super T, ? extends Publisher<? extends R>> mapper;
+    private final int maxConcurrency;
+    private final int prefetch;
+
+    public MyFlatMapFlux(MyFlux<T> sourcePublisher, Function<? super T, ? extends Publisher<? extends R>> mapper,
+            int maxConcurrency, int prefetch) {
+        super();
+        if (maxConcurrency <= 0) { throw new IllegalArgumentException("maxConcurrency must be positive"); }
+        if (prefetch <= 0) { throw new IllegalArgumentException("prefetch must be positive"); }
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+        this.maxConcurrency = maxConcurrency;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super R> targetSubscriptionSubscriber) {
+        sourcePublisher.subscribe(new FlatMapMain<>(targetSubscriptionSubscriber, mapper, maxConcurrency, prefetch));
+    }
+
+    static final class FlatMapMain<T, R> implements Subscriber<T>, Subscription, MyInnerSubscriber.Parent {
+
+        @SuppressWarnings("rawtypes")
+        private static final MyInnerSubscriber[] EMPTY = new MyInnerSubscriber[0];
+        @SuppressWarnings("rawtypes")
+        private static final MyInnerSubscriber[] TERMINATED = new MyInnerSubscriber[0];
+
+        private final Subscriber<? super R> actual;
+        private final Function<? super T, ? extends Publisher<? extends R>> mapper;
+        private final int maxConcurrency;
+        private final int prefetch;
+
+        //Copy-on-write array of the active inners, swapped with CAS so adding and removing never locks
+        private final AtomicReference<MyInnerSubscriber<R>[]> inners;
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        private Subscription sourcePublisherSubscription;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private int lastIndex; //only touched in drainLoop, round robin start so one busy inner cannot starve the rest
+
+        @SuppressWarnings("unchecked")
+        FlatMapMain(Subscriber<? super R> actual, Function<? super T, ? extends Publisher<? extends R>> mapper,
+                int maxConcurrency, int prefetch) {
+            this.actual = actual;
+            this.mapper = mapper;
+            this.maxConcurrency = maxConcurrency;
+            this.prefetch = prefetch;
+            this.inners = new AtomicReference<>(EMPTY);
+        }
+
+        @Override
+        public void onSubscribe(Subscription sourcePublisherSubscription) {
+            this.sourcePublisherSubscription = sourcePublisherSubscription;
+            actual.onSubscribe(this);
+            sourcePublisherSubscription.request(maxConcurrency);
+        }
+
+        @Override
+        public void onNext(T element) {
+            if (done) {
+                return;
+            }
+            Publisher<? extends R> innerPublisher;
+            try {
+                innerPublisher = requireNonNull(mapper.apply(element), "mapper returned a null Publisher");
+            } catch (Throwable throwable) {
+                sourcePublisherSubscription.cancel();
+                onError(throwable);
+                return;
+            }
+            MyInnerSubscriber<R> inner = new MyInnerSubscriber<>(this, prefetch);
+            if (add(inner)) {
+                innerPublisher.subscribe(inner);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            if (error.compareAndSet(null, throwable)) {
+                done = true;
+                drain();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) { throw new RuntimeException("Publisher request must be positive"); }
+            MyOperators.addCap(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            if (wip.getAndIncrement() == 0) {
+                sourcePublisherSubscription.cancel();
+                cancelInners();
+            }
+        }
+
+        @Override
+        public void innerError(Throwable throwable) {
+            if (error.compareAndSet(null, throwable)) {
+                sourcePublisherSubscription.cancel();
+                done = true;
+                drain();
+            }
+        }
+
+        private boolean add(MyInnerSubscriber<R> inner) {
+            for (;;) {
+                MyInnerSubscriber<R>[] current = inners.get();
+                if (current == TERMINATED) {
+                    inner.cancel();
+                    return false;
+                }
+                @SuppressWarnings("unchecked")
+                MyInnerSubscriber<R>[] next = new MyInnerSubscriber[current.length + 1];
+                System.arraycopy(current, 0, next, 0, current.length);
+                next[current.length] = inner;
+                if (inners.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        private void remove(MyInnerSubscriber<R> inner) {
+            for (;;) {
+                MyInnerSubscriber<R>[] current = inners.get();
+                int index = -1;
+                for (int i = 0; i < current.length; i++) {
+                    if (current[i] == inner) {
+                        index = i;
+                        break;
+                    }
+                }
+                if (index < 0) {
+                    return;
+                }
+                MyInnerSubscriber<R>[] next;
+                if (current.length == 1) {
+                    next = empty();
+                } else {
+                    next = newArray(current.length - 1);
+                    System.arraycopy(current, 0, next, 0, index);
+                    System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+                }
+                if (inners.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void cancelInners() {
+            for (MyInnerSubscriber<R> inner : inners.getAndSet(TERMINATED)) {
+                inner.cancel();
+            }
+        }
+
+        @Override
+        public void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            drainLoop();
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            for (;;) {
+                if (checkTerminated()) {
+                    return;
+                }
+
+                MyInnerSubscriber<R>[] current = inners.get();
+                int count = current.length;
+                long r = requested.get();
+                long emitted = 0;
+                int completedInners = 0;
+
+                if (count != 0) {
+                    int index = lastIndex < count ? lastIndex : 0;
+                    for (int visited = 0; visited < count && !cancelled; visited++) {
+                        MyInnerSubscriber<R> inner = current[index];
+                        while (emitted != r && !cancelled) {
+                            R element = inner.queue.poll();
+                            if (element == null) {
+                                break;
+                            }
+                            actual.onNext(element);
+                            emitted++;
+                            inner.consumed();
+                        }
+                        boolean innerDone = inner.done;
+                        if (innerDone && inner.queue.isEmpty()) {
+                            remove(inner);
+                            completedInners++;
+                        }
+                        if (emitted == r) {
+                            break;
+                        }
+                        if (++index == count) {
+                            index = 0;
+                        }
+                    }
+                    lastIndex = index;
+                }
+
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                if (completedInners != 0 && !done && !cancelled) {
+                    sourcePublisherSubscription.request(completedInners);
+                }
+                if (emitted != 0 || completedInners != 0) {
+                    //Something changed, go round again before deciding whether to terminate
+                    continue;
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private boolean checkTerminated() {
+            if (cancelled) {
+                sourcePublisherSubscription.cancel();
+                cancelInners();
+                return true;
+            }
+            Throwable throwable = error.get();
+            if (throwable != null) {
+                cancelInners();
+                actual.onError(throwable);
+                return true;
+            }
+            if (done && inners.get().length == 0) {
+                inners.set(terminated());
+                actual.onComplete();
+                return true;
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        private MyInnerSubscriber<R>[] empty() {
+            return EMPTY;
+        }
+
+        @SuppressWarnings("unchecked")
+        private MyInnerSubscriber<R>[] terminated() {
+            return TERMINATED;
+        }
+
+        @SuppressWarnings("unchecked")
+        private MyInnerSubscriber<R>[] newArray(int length) {
+            return new MyInnerSubscriber[length];
+        }
+    }
+
+}
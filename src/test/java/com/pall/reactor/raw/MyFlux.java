@@ -1,6 +1,10 @@
 package com.pall.reactor.raw;
 
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
@@ -8,14 +12,85 @@ import org.reactivestreams.Subscriber;
 //Very rough Flux to get a basic understanding on how the Flux API works
 public abstract class MyFlux<T> implements Publisher<T> {
 
+    //Same defaults as Reactor's Queues.SMALL_BUFFER_SIZE and Queues.XS_BUFFER_SIZE
+    static final int DEFAULT_PREFETCH = 256;
+    static final int DEFAULT_INNER_PREFETCH = 32;
+
     public static <T> MyFlux<T> create(Publisher<T> publisher) {
         return new MyCreateFlux<T>(publisher);
     }
     
+    @SafeVarargs
+    public static <T> MyFlux<T> fromArray(T... array) {
+        return new MyArrayFlux<T>(array);
+    }
+    
     public <V> MyFlux<V> map(Function<T, V> mapper){
         return new MyMapFlux<T, V>(this, mapper);
     }
     
+    public <R> MyFlux<R> flatMap(Function<? super T, ? extends Publisher<? extends R>> mapper) {
+        return flatMap(mapper, DEFAULT_PREFETCH, DEFAULT_INNER_PREFETCH);
+    }
+    
+    public <R> MyFlux<R> flatMap(Function<? super T, ? extends Publisher<? extends R>> mapper, int maxConcurrency) {
+        return flatMap(mapper, maxConcurrency, DEFAULT_INNER_PREFETCH);
+    }
+    
+    public <R> MyFlux<R> flatMap(Function<? super T, ? extends Publisher<? extends R>> mapper, int maxConcurrency, int prefetch) {
+        return new MyFlatMapFlux<T, R>(this, mapper, maxConcurrency, prefetch);
+    }
+    
+    public MyIntFlux mapToInt(ToIntFunction<? super T> mapper) {
+        return new MyMapToIntFlux<T>(this, mapper);
+    }
+    
+    public MyLongFlux mapToLong(ToLongFunction<? super T> mapper) {
+        return new MyMapToLongFlux<T>(this, mapper);
+    }
+    
+    public MyFlux<T> noop() {
+        return new MyNOOPFlux<T>(this);
+    }
+    
+    public MyFlux<T> publishOn(Executor executor) {
+        return publishOn(executor, DEFAULT_PREFETCH);
+    }
+    
+    public MyFlux<T> publishOn(Executor executor, int prefetch) {
+        return new MyPublishOnFlux<T>(this, executor, prefetch);
+    }
+    
+    public MyParallelFlux<T> parallel(int parallelism) {
+        return parallel(parallelism, DEFAULT_PREFETCH);
+    }
+    
+    public MyParallelFlux<T> parallel(int parallelism, int prefetch) {
+        return new MyParallelSource<T>(this, parallelism, prefetch);
+    }
+    
+    public MyConnectableFlux<T> publish() {
+        return publish(DEFAULT_PREFETCH);
+    }
+    
+    public MyConnectableFlux<T> publish(int bufferSize) {
+        return new MyConnectableFlux<T>(this, bufferSize);
+    }
+    
+    public MyFlux<T> subscribeOn(Executor executor) {
+        return new MySubscribeOnFlux<T>(this, executor);
+    }
+    
+    public void subscribe(Consumer<? super T> consumer) {
+        subscribe(consumer, throwable -> {
+            throw new RuntimeException("Error signalled with no error consumer", throwable);
+        });
+    }
+    
+    public void subscribe(Consumer<? super T> consumer, Consumer<? super Throwable> errorConsumer) {
+        subscribe(new MyLambdaSubscriber<T>(consumer, errorConsumer));
+    }
+    
     @Override
     public abstract void subscribe(Subscriber<? super T> s);
 
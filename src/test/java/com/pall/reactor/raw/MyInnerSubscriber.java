@@ -0,0 +1,94 @@
+package com.pall.reactor.raw;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Inner subscriber for operators that merge several sources (flatMap and parallel's sequential). Each
+//inner buffers into its own MySpscArrayQueue of prefetch elements, its source's thread being the
+//producer and whoever runs the parent's drain loop the consumer, and asks its source for more in
+//batches once 75% of the prefetch has been emitted downstream.
+final class MyInnerSubscriber<R> implements Subscriber<R> {
+
+    interface Parent {
+
+        void drain();
+
+        void innerError(Throwable throwable);
+
+    }
+
+    private static final Subscription CANCELLED = new Subscription() {
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final Parent parent;
+    private final int prefetch;
+    private final int limit;
+    final MySpscArrayQueue<R> queue;
+    private final AtomicReference<Subscription> subscription = new AtomicReference<>();
+    private int consumed; //only touched in the parent's drain loop
+    volatile boolean done;
+
+    MyInnerSubscriber(Parent parent, int prefetch) {
+        this.parent = parent;
+        this.prefetch = prefetch;
+        this.limit = prefetch - (prefetch >> 2);
+        this.queue = new MySpscArrayQueue<>(prefetch);
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        if (subscription.compareAndSet(null, s)) {
+            s.request(prefetch);
+        } else {
+            s.cancel();
+        }
+    }
+
+    @Override
+    public void onNext(R element) {
+        if (!queue.offer(element)) {
+            cancel();
+            parent.innerError(new IllegalStateException("Queue is full: more elements published than requested"));
+            return;
+        }
+        parent.drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        done = true;
+        parent.innerError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        parent.drain();
+    }
+
+    //Called by the parent's drain loop after each element from this inner is emitted downstream
+    void consumed() {
+        if (++consumed == limit) {
+            consumed = 0;
+            subscription.get().request(limit);
+        }
+    }
+
+    void cancel() {
+        Subscription s = subscription.getAndSet(CANCELLED);
+        if (s != null && s != CANCELLED) {
+            s.cancel();
+        }
+    }
+
+}
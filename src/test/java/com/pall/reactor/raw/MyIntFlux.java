@@ -0,0 +1,56 @@
+package com.pall.reactor.raw;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+import org.reactivestreams.Subscription;
+
+//Primitive int version of MyFlux. Values travel through MyIntSubscriber.onNext(int) so a range/map
+//pipeline allocates nothing per element. boxed/mapToObj bridge back to MyFlux at the edge of the
+//numeric part of a pipeline and MyFlux.mapToInt bridges in.
+public abstract class MyIntFlux {
+
+    public static MyIntFlux range(int start, int count) {
+        return new MyIntRangeFlux(start, count);
+    }
+
+    public MyIntFlux map(IntUnaryOperator mapper) {
+        return new MyIntMapFlux(this, mapper);
+    }
+
+    public <T> MyFlux<T> mapToObj(IntFunction<T> mapper) {
+        return new MyIntMapToObjFlux<T>(this, mapper);
+    }
+
+    public MyFlux<Integer> boxed() {
+        return mapToObj(Integer::valueOf);
+    }
+
+    public void subscribe(IntConsumer consumer) {
+        subscribe(new MyIntSubscriber() {
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(int element) {
+                consumer.accept(element);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new RuntimeException("Error signalled with no error consumer", throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    public abstract void subscribe(MyIntSubscriber s);
+
+}
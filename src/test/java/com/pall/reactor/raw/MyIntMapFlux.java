@@ -0,0 +1,94 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.IntUnaryOperator;
+
+import org.reactivestreams.Subscription;
+
+//MyMapFlux for ints, chained maps are fused into one stage and a throwing mapper fails the stream in the same way
+public class MyIntMapFlux extends MyIntFlux {
+
+    private final MyIntFlux sourcePublisher;
+    private final IntUnaryOperator mapper;
+
+    public MyIntMapFlux(MyIntFlux sourcePublisher, IntUnaryOperator mapper) {
+        super();
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+    }
+
+    @Override
+    public MyIntFlux map(IntUnaryOperator nextMapper) {
+        return new MyIntMapFlux(sourcePublisher, mapper.andThen(requireNonNull(nextMapper, "mapper cannot be null")));
+    }
+
+    @Override
+    public void subscribe(MyIntSubscriber targetSubscriptionSubscriber) {
+        sourcePublisher.subscribe(new IntMapSubscriber(targetSubscriptionSubscriber, mapper));
+    }
+
+    static final class IntMapSubscriber implements MyIntSubscriber, Subscription {
+
+        private final MyIntSubscriber targetSubscriptionSubscriber;
+        private final IntUnaryOperator mapper;
+        private Subscription sourcePublisherSubscription;
+        private boolean done;
+
+        IntMapSubscriber(MyIntSubscriber targetSubscriptionSubscriber, IntUnaryOperator mapper) {
+            this.targetSubscriptionSubscriber = targetSubscriptionSubscriber;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onSubscribe(Subscription sourcePublisherSubscription) {
+            this.sourcePublisherSubscription = sourcePublisherSubscription;
+            targetSubscriptionSubscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(int element) {
+            if (done) {
+                return;
+            }
+            int mapped;
+            try {
+                mapped = mapper.applyAsInt(element);
+            } catch (Throwable throwable) {
+                sourcePublisherSubscription.cancel();
+                onError(throwable);
+                return;
+            }
+            targetSubscriptionSubscriber.onNext(mapped);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            sourcePublisherSubscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            sourcePublisherSubscription.cancel();
+        }
+    }
+
+}
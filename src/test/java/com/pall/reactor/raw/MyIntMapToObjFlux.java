@@ -0,0 +1,91 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.IntFunction;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Bridge from MyIntFlux back to MyFlux, the only place in an int pipeline where a value is boxed
+public class MyIntMapToObjFlux<T> extends MyFlux<T> {
+
+    private final MyIntFlux sourcePublisher;
+    private final IntFunction<T> mapper;
+
+    public MyIntMapToObjFlux(MyIntFlux sourcePublisher, IntFunction<T> mapper) {
+        super();
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> targetSubscriptionSubscriber) {
+        sourcePublisher.subscribe(new MapToObjSubscriber<T>(targetSubscriptionSubscriber, mapper));
+    }
+
+    //Also the downstream Subscription so a fusable subscription from further up is never handed past the mapper
+    static final class MapToObjSubscriber<T> implements MyIntSubscriber, Subscription {
+
+        private final Subscriber<? super T> targetSubscriptionSubscriber;
+        private final IntFunction<T> mapper;
+        private Subscription sourcePublisherSubscription;
+        private boolean done;
+
+        MapToObjSubscriber(Subscriber<? super T> targetSubscriptionSubscriber, IntFunction<T> mapper) {
+            this.targetSubscriptionSubscriber = targetSubscriptionSubscriber;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onSubscribe(Subscription sourcePublisherSubscription) {
+            this.sourcePublisherSubscription = sourcePublisherSubscription;
+            targetSubscriptionSubscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(int element) {
+            if (done) {
+                return;
+            }
+            T mapped;
+            try {
+                mapped = requireNonNull(mapper.apply(element), "mapper returned a null value");
+            } catch (Throwable throwable) {
+                sourcePublisherSubscription.cancel();
+                onError(throwable);
+                return;
+            }
+            targetSubscriptionSubscriber.onNext(mapped);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            sourcePublisherSubscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            sourcePublisherSubscription.cancel();
+        }
+    }
+
+}
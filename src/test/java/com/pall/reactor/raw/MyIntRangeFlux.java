@@ -0,0 +1,108 @@
+package com.pall.reactor.raw;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Subscription;
+
+//Emits count ints starting from start
+public class MyIntRangeFlux extends MyIntFlux {
+
+    private final int start;
+    private final int count;
+
+    public MyIntRangeFlux(int start, int count) {
+        super();
+        if (count < 0) { throw new IllegalArgumentException("count must be positive"); }
+        if (count > 0 && (long) start + count - 1 > Integer.MAX_VALUE) { throw new IllegalArgumentException("start + count must not overflow int"); }
+        this.start = start;
+        this.count = count;
+    }
+
+    @Override
+    public void subscribe(MyIntSubscriber targetSubscriptionSubscriber) {
+        RangeSubscription subscription = new RangeSubscription(targetSubscriptionSubscriber, start, (long) start + count);
+        targetSubscriptionSubscriber.onSubscribe(subscription);
+        if (count == 0 && !subscription.cancelled) {
+            targetSubscriptionSubscriber.onComplete();
+        }
+    }
+
+    static final class RangeSubscription implements Subscription {
+
+        private final MyIntSubscriber actual;
+        private final long end;
+        private final AtomicLong requested = new AtomicLong();
+        private long index;
+        private volatile boolean cancelled;
+
+        RangeSubscription(MyIntSubscriber actual, long start, long end) {
+            this.actual = actual;
+            this.index = start;
+            this.end = end;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n < 0) { throw new RuntimeException("Publisher request must be positive"); }
+            if (n == 0 || index == end) {
+                return;
+            }
+            if (MyOperators.addCap(requested, n) == 0) {
+                if (n == Long.MAX_VALUE) {
+                    emitAll();
+                } else {
+                    emit(n);
+                }
+            }
+        }
+
+        private void emitAll() {
+            for (long i = index; i != end; i++) {
+                if (cancelled) {
+                    return;
+                }
+                actual.onNext((int) i);
+            }
+            if (!cancelled) {
+                actual.onComplete();
+            }
+        }
+
+        //Only one thread emits at a time, whoever moved requested away from zero
+        private void emit(long n) {
+            long emitted = 0;
+            long i = index;
+            for (;;) {
+                while (emitted != n && i != end) {
+                    if (cancelled) {
+                        return;
+                    }
+                    actual.onNext((int) i);
+                    i++;
+                    emitted++;
+                }
+                if (i == end) {
+                    if (!cancelled) {
+                        actual.onComplete();
+                    }
+                    return;
+                }
+                n = requested.get();
+                if (n == emitted) {
+                    index = i;
+                    n = requested.addAndGet(-emitted);
+                    if (n == 0) {
+                        return;
+                    }
+                    emitted = 0;
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+}
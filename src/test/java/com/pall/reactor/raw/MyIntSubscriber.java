@@ -0,0 +1,17 @@
+package com.pall.reactor.raw;
+
+import org.reactivestreams.Subscription;
+
+//Subscriber for MyIntFlux. Same contract as a Reactive Streams Subscriber but onNext takes a
+//primitive so elements are never boxed.
+public interface MyIntSubscriber {
+
+    void onSubscribe(Subscription subscription);
+
+    void onNext(int element);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+
+}
@@ -0,0 +1,66 @@
+package com.pall.reactor.raw;
+
+import java.util.function.Consumer;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Subscriber behind MyFlux.subscribe(Consumer). Requests SYNC fusion from the upstream and when it
+//is granted drains the chain with poll() in a loop, otherwise it requests an unbounded amount.
+public class MyLambdaSubscriber<T> implements Subscriber<T> {
+
+    private final Consumer<? super T> consumer;
+    private final Consumer<? super Throwable> errorConsumer;
+    private Subscription subscription;
+
+    public MyLambdaSubscriber(Consumer<? super T> consumer, Consumer<? super Throwable> errorConsumer) {
+        this.consumer = consumer;
+        this.errorConsumer = errorConsumer;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        if (subscription instanceof MyQueueSubscription) {
+            MyQueueSubscription<T> queueSubscription = (MyQueueSubscription<T>) subscription;
+            if (queueSubscription.requestFusion(MyQueueSubscription.SYNC) == MyQueueSubscription.SYNC) {
+                drainSync(queueSubscription);
+                return;
+            }
+        }
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    private void drainSync(MyQueueSubscription<T> queueSubscription) {
+        T element;
+        try {
+            while ((element = queueSubscription.poll()) != null) {
+                consumer.accept(element);
+            }
+        } catch (Throwable throwable) {
+            queueSubscription.cancel();
+            onError(throwable);
+        }
+    }
+
+    @Override
+    public void onNext(T element) {
+        try {
+            consumer.accept(element);
+        } catch (Throwable throwable) {
+            subscription.cancel();
+            onError(throwable);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        errorConsumer.accept(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.pall.reactor.raw;
+
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+
+import org.reactivestreams.Subscription;
+
+//Primitive long version of MyFlux. Values travel through MyLongSubscriber.onNext(long) so a range/map
+//pipeline allocates nothing per element. boxed/mapToObj bridge back to MyFlux at the edge of the
+//numeric part of a pipeline and MyFlux.mapToLong bridges in.
+public abstract class MyLongFlux {
+
+    public static MyLongFlux range(long start, long count) {
+        return new MyLongRangeFlux(start, count);
+    }
+
+    public MyLongFlux map(LongUnaryOperator mapper) {
+        return new MyLongMapFlux(this, mapper);
+    }
+
+    public <T> MyFlux<T> mapToObj(LongFunction<T> mapper) {
+        return new MyLongMapToObjFlux<T>(this, mapper);
+    }
+
+    public MyFlux<Long> boxed() {
+        return mapToObj(Long::valueOf);
+    }
+
+    public void subscribe(LongConsumer consumer) {
+        subscribe(new MyLongSubscriber() {
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(long element) {
+                consumer.accept(element);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new RuntimeException("Error signalled with no error consumer", throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    public abstract void subscribe(MyLongSubscriber s);
+
+}
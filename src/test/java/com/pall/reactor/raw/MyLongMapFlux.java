@@ -0,0 +1,94 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.LongUnaryOperator;
+
+import org.reactivestreams.Subscription;
+
+//MyMapFlux for longs, chained maps are fused into one stage and a throwing mapper fails the stream in the same way
+public class MyLongMapFlux extends MyLongFlux {
+
+    private final MyLongFlux sourcePublisher;
+    private final LongUnaryOperator mapper;
+
+    public MyLongMapFlux(MyLongFlux sourcePublisher, LongUnaryOperator mapper) {
+        super();
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+    }
+
+    @Override
+    public MyLongFlux map(LongUnaryOperator nextMapper) {
+        return new MyLongMapFlux(sourcePublisher, mapper.andThen(requireNonNull(nextMapper, "mapper cannot be null")));
+    }
+
+    @Override
+    public void subscribe(MyLongSubscriber targetSubscriptionSubscriber) {
+        sourcePublisher.subscribe(new LongMapSubscriber(targetSubscriptionSubscriber, mapper));
+    }
+
+    static final class LongMapSubscriber implements MyLongSubscriber, Subscription {
+
+        private final MyLongSubscriber targetSubscriptionSubscriber;
+        private final LongUnaryOperator mapper;
+        private Subscription sourcePublisherSubscription;
+        private boolean done;
+
+        LongMapSubscriber(MyLongSubscriber targetSubscriptionSubscriber, LongUnaryOperator mapper) {
+            this.targetSubscriptionSubscriber = targetSubscriptionSubscriber;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onSubscribe(Subscription sourcePublisherSubscription) {
+            this.sourcePublisherSubscription = sourcePublisherSubscription;
+            targetSubscriptionSubscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(long element) {
+            if (done) {
+                return;
+            }
+            long mapped;
+            try {
+                mapped = mapper.applyAsLong(element);
+            } catch (Throwable throwable) {
+                sourcePublisherSubscription.cancel();
+                onError(throwable);
+                return;
+            }
+            targetSubscriptionSubscriber.onNext(mapped);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            sourcePublisherSubscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            sourcePublisherSubscription.cancel();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.LongFunction;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Bridge from MyLongFlux back to MyFlux, the only place in a long pipeline where a value is boxed
+public class MyLongMapToObjFlux<T> extends MyFlux<T> {
+
+    private final MyLongFlux sourcePublisher;
+    private final LongFunction<T> mapper;
+
+    public MyLongMapToObjFlux(MyLongFlux sourcePublisher, LongFunction<T> mapper) {
+        super();
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> targetSubscriptionSubscriber) {
+        sourcePublisher.subscribe(new MapToObjSubscriber<T>(targetSubscriptionSubscriber, mapper));
+    }
+
+    //Also the downstream Subscription so a fusable subscription from further up is never handed past the mapper
+    static final class MapToObjSubscriber<T> implements MyLongSubscriber, Subscription {
+
+        private final Subscriber<? super T> targetSubscriptionSubscriber;
+        private final LongFunction<T> mapper;
+        private Subscription sourcePublisherSubscription;
+        private boolean done;
+
+        MapToObjSubscriber(Subscriber<? super T> targetSubscriptionSubscriber, LongFunction<T> mapper) {
+            this.targetSubscriptionSubscriber = targetSubscriptionSubscriber;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onSubscribe(Subscription sourcePublisherSubscription) {
+            this.sourcePublisherSubscription = sourcePublisherSubscription;
+            targetSubscriptionSubscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(long element) {
+            if (done) {
+                return;
+            }
+            T mapped;
+            try {
+                mapped = requireNonNull(mapper.apply(element), "mapper returned a null value");
+            } catch (Throwable throwable) {
+                sourcePublisherSubscription.cancel();
+                onError(throwable);
+                return;
+            }
+            targetSubscriptionSubscriber.onNext(mapped);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            sourcePublisherSubscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            sourcePublisherSubscription.cancel();
+        }
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.pall.reactor.raw;
+
+import org.reactivestreams.Subscription;
+
+//Subscriber for MyLongFlux. Same contract as a Reactive Streams Subscriber but onNext takes a
+//primitive so elements are never boxed.
+public interface MyLongSubscriber {
+
+    void onSubscribe(Subscription subscription);
+
+    void onNext(long element);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+
+}
@@ -9,10 +9,20 @@ import org.reactivestreams.Subscription;
 
 //Almost an exact copy of MyMapOperation but this class extends from MyFlux
 //so operations can be chained
+//
+//Chained maps are fused at assembly time: map(f).map(g) becomes a single MyMapFlux
+//applying f.andThen(g) so only one Subscriber/Subscription pair is created per chain.
+//
+//The MapSubscriber is also the Subscription handed downstream. If the upstream supports
+//MyQueueSubscription fusion the request is passed through and, once fused, poll() maps the
+//values pulled from the upstream rather than anything being signalled through onNext.
+//
+//A mapper that throws cancels the upstream and the exception goes downstream as onError, anything
+//the upstream still sends after that is dropped.
 public class MyMapFlux<I, O> extends MyFlux<O> {
 
-    private MyFlux<I> sourcePublisher;
-    private Function<I, O> mapper;
+    private final MyFlux<I> sourcePublisher;
+    private final Function<I, O> mapper;
 
     public MyMapFlux(MyFlux<I> sourcePublisher, Function<I, O> mapper) {
         super();
@@ -20,43 +30,118 @@ public class MyMapFlux<I, O> extends MyFlux<O> {
         this.mapper = requireNonNull(mapper, "mapper cannot be null");
     }
 
+    @Override
+    public <V> MyFlux<V> map(Function<O, V> nextMapper) {
+        return new MyMapFlux<I, V>(sourcePublisher, mapper.andThen(requireNonNull(nextMapper, "mapper cannot be null")));
+    }
+
     @Override
     public void subscribe(Subscriber<? super O> targetSubscriptionSubscriber) {
-        sourcePublisher.subscribe(new Subscriber<I>() {
-
-                    @Override
-                    public void onComplete() {
-                        targetSubscriptionSubscriber.onComplete();
-                    }
-
-                    @Override
-                    public void onError(Throwable throwable) {
-                        targetSubscriptionSubscriber.onError(throwable);
-
-                    }
-
-                    @Override
-                    public void onNext(I element) {
-                        targetSubscriptionSubscriber.onNext(mapper.apply(element));
-                    }
-
-                    @Override
-                    public void onSubscribe(Subscription sourcePublisherSubscription) {
-                        targetSubscriptionSubscriber.onSubscribe(new Subscription() {
-
-                            @Override
-                            public void request(long n) {
-                                sourcePublisherSubscription.request(n);
-                            }
-
-                            @Override
-                            public void cancel() {
-                                sourcePublisherSubscription.cancel();
-                            }
-                        });
-                    }
-
-                });
-        }   
+        sourcePublisher.subscribe(new MapSubscriber<>(targetSubscriptionSubscriber, mapper));
+    }
+
+    static final class MapSubscriber<I, O> implements Subscriber<I>, MyQueueSubscription<O> {
+
+        private final Subscriber<? super O> targetSubscriptionSubscriber;
+        private final Function<? super I, ? extends O> mapper;
+        private Subscription sourcePublisherSubscription;
+        private MyQueueSubscription<I> queueSubscription;
+        private int sourceMode;
+        private boolean done;
+
+        MapSubscriber(Subscriber<? super O> targetSubscriptionSubscriber, Function<? super I, ? extends O> mapper) {
+            this.targetSubscriptionSubscriber = targetSubscriptionSubscriber;
+            this.mapper = mapper;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSubscribe(Subscription sourcePublisherSubscription) {
+            this.sourcePublisherSubscription = sourcePublisherSubscription;
+            if (sourcePublisherSubscription instanceof MyQueueSubscription) {
+                this.queueSubscription = (MyQueueSubscription<I>) sourcePublisherSubscription;
+            }
+            targetSubscriptionSubscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(I element) {
+            if (sourceMode == ASYNC) {
+                //Values are waiting in the upstream, the downstream will poll them through this stage
+                targetSubscriptionSubscriber.onNext(null);
+                return;
+            }
+            if (done) {
+                return;
+            }
+            O mapped;
+            try {
+                mapped = requireNonNull(mapper.apply(element), "mapper returned a null value");
+            } catch (Throwable throwable) {
+                sourcePublisherSubscription.cancel();
+                onError(throwable);
+                return;
+            }
+            targetSubscriptionSubscriber.onNext(mapped);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            sourcePublisherSubscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            sourcePublisherSubscription.cancel();
+        }
+
+        @Override
+        public int requestFusion(int requestedMode) {
+            if (queueSubscription == null) {
+                return NONE;
+            }
+            sourceMode = queueSubscription.requestFusion(requestedMode);
+            return sourceMode;
+        }
+
+        @Override
+        public O poll() {
+            I element = queueSubscription.poll();
+            return element == null ? null : requireNonNull(mapper.apply(element), "mapper returned a null value");
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return queueSubscription.isEmpty();
+        }
+
+        @Override
+        public int size() {
+            return queueSubscription.size();
+        }
+
+        @Override
+        public void clear() {
+            queueSubscription.clear();
+        }
+    }
 
 }
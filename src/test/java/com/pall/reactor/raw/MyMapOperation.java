@@ -5,8 +5,9 @@ import java.util.function.Function;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
-import org.reactivestreams.Subscription;
 
+//Shares MyMapFlux.MapSubscriber so the subscriber doubles as the downstream Subscription and
+//takes part in MyQueueSubscription fusion, rather than allocating a wrapper per subscription.
 public class MyMapOperation<T, V> implements Publisher<V> {
 
     private Publisher<T> sourcePublisher;
@@ -22,40 +23,6 @@ public class MyMapOperation<T, V> implements Publisher<V> {
     @Override
     public void subscribe(Subscriber<? super V> targetSubscriptionSubscriber) {
         Objects.requireNonNull(sourcePublisher, "Source Publisher has not been set in Operation")
-            .subscribe(new Subscriber<T>() {
-    
-                @Override
-                public void onComplete() {
-                    targetSubscriptionSubscriber.onComplete();
-                }
-    
-                @Override
-                public void onError(Throwable throwable) {
-                    targetSubscriptionSubscriber.onError(throwable);
-                    
-                }
-    
-                @Override
-                public void onNext(T element) {
-                    targetSubscriptionSubscriber.onNext(mapper.apply(element));
-                }
-    
-                @Override
-                public void onSubscribe(Subscription sourcePublisherSubscription) {
-                    targetSubscriptionSubscriber.onSubscribe(new Subscription() {
-                        
-                        @Override
-                        public void request(long n) {
-                            sourcePublisherSubscription.request(n);
-                        }
-                        
-                        @Override
-                        public void cancel() {
-                            sourcePublisherSubscription.cancel();
-                        }
-                    });
-                }
-                
-            });
+            .subscribe(new MyMapFlux.MapSubscriber<>(targetSubscriptionSubscriber, mapper));
     }
 }
@@ -0,0 +1,91 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.ToIntFunction;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Bridge from MyFlux into MyIntFlux
+public class MyMapToIntFlux<T> extends MyIntFlux {
+
+    private final MyFlux<T> sourcePublisher;
+    private final ToIntFunction<? super T> mapper;
+
+    public MyMapToIntFlux(MyFlux<T> sourcePublisher, ToIntFunction<? super T> mapper) {
+        super();
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+    }
+
+    @Override
+    public void subscribe(MyIntSubscriber targetSubscriptionSubscriber) {
+        sourcePublisher.subscribe(new MapToIntSubscriber<T>(targetSubscriptionSubscriber, mapper));
+    }
+
+    //Also the downstream Subscription so a fusable subscription from the source is never handed past the mapper
+    static final class MapToIntSubscriber<T> implements Subscriber<T>, Subscription {
+
+        private final MyIntSubscriber targetSubscriptionSubscriber;
+        private final ToIntFunction<? super T> mapper;
+        private Subscription sourcePublisherSubscription;
+        private boolean done;
+
+        MapToIntSubscriber(MyIntSubscriber targetSubscriptionSubscriber, ToIntFunction<? super T> mapper) {
+            this.targetSubscriptionSubscriber = targetSubscriptionSubscriber;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onSubscribe(Subscription sourcePublisherSubscription) {
+            this.sourcePublisherSubscription = sourcePublisherSubscription;
+            targetSubscriptionSubscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T element) {
+            if (done) {
+                return;
+            }
+            int mapped;
+            try {
+                mapped = mapper.applyAsInt(element);
+            } catch (Throwable throwable) {
+                sourcePublisherSubscription.cancel();
+                onError(throwable);
+                return;
+            }
+            targetSubscriptionSubscriber.onNext(mapped);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            targetSubscriptionSubscriber.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            sourcePublisherSubscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            sourcePublisherSubscription.cancel();
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.Function;
+
+import org.reactivestreams.Subscriber;
+
+//MyNOOPOperation as a MyFlux. As the operation does nothing it is removed at assembly time
+//wherever possible: noop().noop() is a single stage and map after noop subscribes straight
+//to the source.
+public class MyNOOPFlux<T> extends MyFlux<T> {
+
+    private final MyFlux<T> sourcePublisher;
+
+    public MyNOOPFlux(MyFlux<T> sourcePublisher) {
+        super();
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+    }
+
+    @Override
+    public MyFlux<T> noop() {
+        return this;
+    }
+
+    @Override
+    public <V> MyFlux<V> map(Function<T, V> mapper) {
+        return sourcePublisher.map(mapper);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> targetSubscriptionSubscriber) {
+        sourcePublisher.subscribe(targetSubscriptionSubscriber);
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.pall.reactor.raw;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Subscription;
+
+//Helpers shared by the raw operators, a very small subset of Reactor's Operators class
+final class MyOperators {
+
+    //Handed to a subscriber that is going to be terminated straight away
+    static final Subscription EMPTY_SUBSCRIPTION = new Subscription() {
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private MyOperators() {
+    }
+
+    //Adds n to the requested amount capping at Long.MAX_VALUE which is treated as unbounded.
+    //Returns the amount requested before n was added.
+    static long addCap(AtomicLong requested, long n) {
+        for (;;) {
+            long current = requested.get();
+            if (current == Long.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+            long next = current + n;
+            if (next < 0) {
+                next = Long.MAX_VALUE;
+            }
+            if (requested.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+}
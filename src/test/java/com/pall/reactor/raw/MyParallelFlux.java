@@ -0,0 +1,51 @@
+package com.pall.reactor.raw;
+
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import org.reactivestreams.Subscriber;
+
+//Very rough ParallelFlux. A sequence split into parallelism() rails, each rail being an ordinary
+//sequence to its own Subscriber. Created with MyFlux.parallel(n), given threads with runOn and joined
+//back into a single MyFlux with sequential().
+public abstract class MyParallelFlux<T> {
+
+    public abstract int parallelism();
+
+    //Subscribes one Subscriber per rail, subscribers.length must equal parallelism()
+    public abstract void subscribe(Subscriber<? super T>[] subscribers);
+
+    public MyParallelFlux<T> runOn(Executor executor) {
+        return runOn(executor, MyFlux.DEFAULT_PREFETCH);
+    }
+
+    public MyParallelFlux<T> runOn(Executor executor, int prefetch) {
+        return new MyParallelRunOn<T>(this, executor, prefetch);
+    }
+
+    public <V> MyParallelFlux<V> map(Function<T, V> mapper) {
+        return new MyParallelMap<T, V>(this, mapper);
+    }
+
+    public MyFlux<T> sequential() {
+        return sequential(MyFlux.DEFAULT_PREFETCH);
+    }
+
+    public MyFlux<T> sequential(int prefetch) {
+        return new MyParallelSequentialFlux<T>(this, prefetch);
+    }
+
+    protected boolean validate(Subscriber<?>[] subscribers) {
+        if (subscribers.length != parallelism()) {
+            IllegalArgumentException e = new IllegalArgumentException(
+                    "parallelism is " + parallelism() + " but there are " + subscribers.length + " subscribers");
+            for (Subscriber<?> subscriber : subscribers) {
+                subscriber.onSubscribe(MyOperators.EMPTY_SUBSCRIPTION);
+                subscriber.onError(e);
+            }
+            return false;
+        }
+        return true;
+    }
+
+}
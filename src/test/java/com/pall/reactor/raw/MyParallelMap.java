@@ -0,0 +1,44 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.Function;
+
+import org.reactivestreams.Subscriber;
+
+//Map on every rail, reusing MyMapFlux's subscriber. Chained maps are fused the same way as MyMapFlux.
+public class MyParallelMap<I, O> extends MyParallelFlux<O> {
+
+    private final MyParallelFlux<I> sourcePublisher;
+    private final Function<I, O> mapper;
+
+    public MyParallelMap(MyParallelFlux<I> sourcePublisher, Function<I, O> mapper) {
+        super();
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+    }
+
+    @Override
+    public int parallelism() {
+        return sourcePublisher.parallelism();
+    }
+
+    @Override
+    public <V> MyParallelFlux<V> map(Function<O, V> nextMapper) {
+        return new MyParallelMap<I, V>(sourcePublisher, mapper.andThen(requireNonNull(nextMapper, "mapper cannot be null")));
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super O>[] subscribers) {
+        if (!validate(subscribers)) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Subscriber<? super I>[] rails = new Subscriber[subscribers.length];
+        for (int i = 0; i < subscribers.length; i++) {
+            rails[i] = new MyMapFlux.MapSubscriber<I, O>(subscribers[i], mapper);
+        }
+        sourcePublisher.subscribe(rails);
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.Executor;
+
+import org.reactivestreams.Subscriber;
+
+//Gives every rail its own publishOn boundary onto the executor, so the stages after runOn on
+//different rails run at the same time while each rail on its own stays serial.
+public class MyParallelRunOn<T> extends MyParallelFlux<T> {
+
+    private final MyParallelFlux<T> sourcePublisher;
+    private final Executor executor;
+    private final int prefetch;
+
+    public MyParallelRunOn(MyParallelFlux<T> sourcePublisher, Executor executor, int prefetch) {
+        super();
+        if (prefetch <= 0) { throw new IllegalArgumentException("prefetch must be positive"); }
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.executor = requireNonNull(executor, "executor cannot be null");
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public int parallelism() {
+        return sourcePublisher.parallelism();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T>[] subscribers) {
+        if (!validate(subscribers)) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Subscriber<? super T>[] rails = new Subscriber[subscribers.length];
+        for (int i = 0; i < subscribers.length; i++) {
+            rails[i] = new MyPublishOnFlux.PublishOnSubscriber<T>(subscribers[i], executor, prefetch);
+        }
+        sourcePublisher.subscribe(rails);
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Merges the rails of a MyParallelFlux back into one MyFlux. Each rail is read through a
+//MyInnerSubscriber and the rails are merged round robin by a single work-in-progress drain loop, the
+//same approach as MyFlatMapFlux with a fixed set of inners.
+public class MyParallelSequentialFlux<T> extends MyFlux<T> {
+
+    private final MyParallelFlux<T> sourcePublisher;
+    private final int prefetch;
+
+    public MyParallelSequentialFlux(MyParallelFlux<T> sourcePublisher, int prefetch) {
+        super();
+        if (prefetch <= 0) { throw new IllegalArgumentException("prefetch must be positive"); }
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> targetSubscriptionSubscriber) {
+        SequentialMain<T> main = new SequentialMain<>(targetSubscriptionSubscriber, sourcePublisher.parallelism(), prefetch);
+        targetSubscriptionSubscriber.onSubscribe(main);
+        sourcePublisher.subscribe(main.inners);
+    }
+
+    static final class SequentialMain<T> implements Subscription, MyInnerSubscriber.Parent {
+
+        private final Subscriber<? super T> actual;
+        final MyInnerSubscriber<T>[] inners;
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private volatile boolean cancelled;
+        private int index; //only touched in drainLoop
+
+        @SuppressWarnings("unchecked")
+        SequentialMain(Subscriber<? super T> actual, int parallelism, int prefetch) {
+            this.actual = actual;
+            this.inners = new MyInnerSubscriber[parallelism];
+            for (int i = 0; i < parallelism; i++) {
+                inners[i] = new MyInnerSubscriber<>(this, prefetch);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) { throw new RuntimeException("Publisher request must be positive"); }
+            MyOperators.addCap(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            cancelInners();
+            if (wip.getAndIncrement() == 0) {
+                clearInners();
+            }
+        }
+
+        @Override
+        public void innerError(Throwable throwable) {
+            if (error.compareAndSet(null, throwable)) {
+                cancelInners();
+                drain();
+            }
+        }
+
+        @Override
+        public void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            drainLoop();
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            int n = inners.length;
+            for (;;) {
+                long r = requested.get();
+                long emitted = 0;
+                int i = index;
+                int notReady = 0;
+
+                for (;;) {
+                    if (cancelled) {
+                        clearInners();
+                        return;
+                    }
+                    Throwable throwable = error.get();
+                    if (throwable != null) {
+                        clearInners();
+                        actual.onError(throwable);
+                        return;
+                    }
+
+                    if (emitted == r || notReady == n) {
+                        break;
+                    }
+
+                    MyInnerSubscriber<T> inner = inners[i];
+                    T element = inner.queue.poll();
+                    if (element != null) {
+                        actual.onNext(element);
+                        emitted++;
+                        inner.consumed();
+                        notReady = 0;
+                    } else {
+                        notReady++;
+                    }
+                    if (++i == n) {
+                        i = 0;
+                    }
+                }
+                index = i;
+
+                if (allDoneAndEmpty()) {
+                    actual.onComplete();
+                    return;
+                }
+
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private boolean allDoneAndEmpty() {
+            for (MyInnerSubscriber<T> inner : inners) {
+                boolean d = inner.done;
+                if (!d || !inner.queue.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void cancelInners() {
+            for (MyInnerSubscriber<T> inner : inners) {
+                inner.cancel();
+            }
+        }
+
+        private void clearInners() {
+            for (MyInnerSubscriber<T> inner : inners) {
+                inner.queue.clear();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Splits a MyFlux into rails, handing elements out round robin. A rail with no outstanding demand is
+//skipped so one slow rail does not hold up the others. The source is read through a
+//MySpscArrayQueue of prefetch elements and topped up in batches at the 75% mark.
+//
+//The source is not asked for anything until every rail has made its first request (or cancelled),
+//otherwise a synchronous source would hand everything to whichever rail happened to request first.
+public class MyParallelSource<T> extends MyParallelFlux<T> {
+
+    private final MyFlux<T> sourcePublisher;
+    private final int parallelism;
+    private final int prefetch;
+
+    public MyParallelSource(MyFlux<T> sourcePublisher, int parallelism, int prefetch) {
+        super();
+        if (parallelism <= 0) { throw new IllegalArgumentException("parallelism must be positive"); }
+        if (prefetch <= 0) { throw new IllegalArgumentException("prefetch must be positive"); }
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.parallelism = parallelism;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public int parallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T>[] subscribers) {
+        if (!validate(subscribers)) {
+            return;
+        }
+        sourcePublisher.subscribe(new ParallelSourceMain<>(subscribers, prefetch));
+    }
+
+    static final class ParallelSourceMain<T> implements Subscriber<T> {
+
+        private final Subscriber<? super T>[] rails;
+        private final int prefetch;
+        private final int limit;
+        private final MySpscArrayQueue<T> queue;
+
+        private final AtomicLongArray requests;
+        private final long[] emissions; //only touched in drainLoop
+        private final AtomicIntegerArray railCancelled;
+        private final AtomicInteger cancelledRails = new AtomicInteger();
+        private final AtomicIntegerArray railReady;
+        private final AtomicInteger readyRails = new AtomicInteger();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private Subscription sourcePublisherSubscription;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private Throwable error;
+
+        //Only touched in drainLoop
+        private int index;
+        private int consumed;
+
+        ParallelSourceMain(Subscriber<? super T>[] rails, int prefetch) {
+            this.rails = rails;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.queue = new MySpscArrayQueue<>(prefetch);
+            this.requests = new AtomicLongArray(rails.length);
+            this.emissions = new long[rails.length];
+            this.railCancelled = new AtomicIntegerArray(rails.length);
+            this.railReady = new AtomicIntegerArray(rails.length);
+        }
+
+        @Override
+        public void onSubscribe(Subscription sourcePublisherSubscription) {
+            this.sourcePublisherSubscription = sourcePublisherSubscription;
+            for (int i = 0; i < rails.length; i++) {
+                rails[i].onSubscribe(new RailSubscription(i));
+            }
+        }
+
+        //The last rail to become ready starts the source
+        private void ready(int rail) {
+            if (railReady.getAndSet(rail, 1) == 0 && readyRails.incrementAndGet() == rails.length && !cancelled) {
+                sourcePublisherSubscription.request(prefetch);
+            }
+        }
+
+        @Override
+        public void onNext(T element) {
+            if (done) {
+                return;
+            }
+            if (!queue.offer(element)) {
+                sourcePublisherSubscription.cancel();
+                onError(new IllegalStateException("Queue is full: more elements published than requested"));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            drainLoop();
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            int n = rails.length;
+            for (;;) {
+                int i = index;
+                int notReady = 0;
+                for (;;) {
+                    if (cancelled) {
+                        queue.clear();
+                        return;
+                    }
+                    boolean d = done;
+                    if (d && error != null) {
+                        queue.clear();
+                        for (Subscriber<? super T> rail : rails) {
+                            rail.onError(error);
+                        }
+                        return;
+                    }
+                    boolean empty = queue.isEmpty();
+                    if (d && empty) {
+                        for (Subscriber<? super T> rail : rails) {
+                            rail.onComplete();
+                        }
+                        return;
+                    }
+                    if (empty) {
+                        break;
+                    }
+
+                    long r = requests.get(i);
+                    long e = emissions[i];
+                    if (r != e && railCancelled.get(i) == 0) {
+                        rails[i].onNext(queue.poll());
+                        emissions[i] = e + 1;
+                        if (++consumed == limit) {
+                            consumed = 0;
+                            sourcePublisherSubscription.request(limit);
+                        }
+                        notReady = 0;
+                    } else {
+                        notReady++;
+                    }
+
+                    if (++i == n) {
+                        i = 0;
+                    }
+                    if (notReady == n) {
+                        break;
+                    }
+                }
+                index = i;
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        final class RailSubscription implements Subscription {
+
+            private final int rail;
+
+            RailSubscription(int rail) {
+                this.rail = rail;
+            }
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) { throw new RuntimeException("Publisher request must be positive"); }
+                for (;;) {
+                    long current = requests.get(rail);
+                    if (current == Long.MAX_VALUE) {
+                        return;
+                    }
+                    long next = current + n;
+                    if (next < 0) {
+                        next = Long.MAX_VALUE;
+                    }
+                    if (requests.compareAndSet(rail, current, next)) {
+                        break;
+                    }
+                }
+                ready(rail);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                if (railCancelled.getAndSet(rail, 1) != 0) {
+                    return;
+                }
+                if (cancelledRails.incrementAndGet() == rails.length) {
+                    cancelled = true;
+                    sourcePublisherSubscription.cancel();
+                    drain();
+                    return;
+                }
+                //The other rails should not wait on this one
+                ready(rail);
+                drain();
+            }
+        }
+    }
+
+}
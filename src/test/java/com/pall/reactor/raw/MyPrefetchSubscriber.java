@@ -0,0 +1,139 @@
+package com.pall.reactor.raw;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Subscriber that drives its own demand in the same way as Reactor's limitRate(highTide, lowTide). It
+//requests prefetch elements on subscribe and each time replenish elements have been received it
+//requests another replenish, so the caller never calls request by hand.
+//
+//Memory stays flat however long the sequence is: elements are either handed to a callback, which can
+//hold assertions that are checked as the sequence streams past, or recorded into a fixed-capacity
+//ring that keeps the most recent elements only.
+//
+//Once the sequence has failed or completed anything else the publisher sends is ignored, so a late
+//onNext is neither recorded nor tops up demand, and the first error is the one kept.
+public class MyPrefetchSubscriber<T> implements Subscriber<T> {
+
+    private final int prefetch;
+    private final int replenish;
+    private final Consumer<? super T> onNext;
+    private final Object[] recorded;
+
+    private Subscription subscription = null;
+    private int sinceLastRequest = 0;
+    private long onNextCount = 0;
+    private volatile boolean onComplete = false;
+    private volatile Throwable throwable = null;
+    private boolean done = false;
+
+    //Replenishes once 75% of prefetch has been received, the same default as limitRate
+    public static <T> MyPrefetchSubscriber<T> recording(int prefetch, int capacity) {
+        return recording(prefetch, prefetch - (prefetch >> 2), capacity);
+    }
+
+    public static <T> MyPrefetchSubscriber<T> recording(int prefetch, int replenish, int capacity) {
+        if (capacity <= 0) { throw new IllegalArgumentException("capacity must be positive"); }
+        return new MyPrefetchSubscriber<>(prefetch, replenish, null, capacity);
+    }
+
+    public static <T> MyPrefetchSubscriber<T> consuming(int prefetch, Consumer<? super T> onNext) {
+        return consuming(prefetch, prefetch - (prefetch >> 2), onNext);
+    }
+
+    public static <T> MyPrefetchSubscriber<T> consuming(int prefetch, int replenish, Consumer<? super T> onNext) {
+        return new MyPrefetchSubscriber<>(prefetch, replenish, Objects.requireNonNull(onNext, "onNext cannot be null"), 0);
+    }
+
+    private MyPrefetchSubscriber(int prefetch, int replenish, Consumer<? super T> onNext, int capacity) {
+        if (prefetch <= 0) { throw new IllegalArgumentException("prefetch must be positive"); }
+        if (replenish <= 0 || replenish > prefetch) { throw new IllegalArgumentException("replenish must be between 1 and prefetch"); }
+        this.prefetch = prefetch;
+        this.replenish = replenish;
+        this.onNext = onNext;
+        this.recorded = new Object[capacity];
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(T t) {
+        if (done) {
+            return;
+        }
+        if (onNext != null) {
+            try {
+                onNext.accept(t);
+            } catch (Throwable e) {
+                //A failed streaming assertion stops the sequence and is kept as the error
+                done = true;
+                subscription.cancel();
+                throwable = e;
+                return;
+            }
+        } else {
+            recorded[(int) (onNextCount % recorded.length)] = t;
+        }
+        onNextCount++;
+        if (++sinceLastRequest == replenish) {
+            sinceLastRequest = 0;
+            subscription.request(replenish);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (done) {
+            return;
+        }
+        done = true;
+        this.throwable = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+        if (done) {
+            return;
+        }
+        done = true;
+        onComplete = true;
+    }
+
+    public void cancel() {
+        Objects.requireNonNull(subscription, "Subscription has not been passed to Subscriber")
+            .cancel();
+    }
+
+    //The most recent elements, oldest first, up to the recording capacity
+    @SuppressWarnings("unchecked")
+    public List<T> getOnNextElements() {
+        int size = (int) Math.min(onNextCount, recorded.length);
+        List<T> elements = new ArrayList<>(size);
+        for (long i = onNextCount - size; i < onNextCount; i++) {
+            elements.add((T) recorded[(int) (i % recorded.length)]);
+        }
+        return elements;
+    }
+
+    public long getOnNextCount() {
+        return onNextCount;
+    }
+
+    public boolean isOnComplete() {
+        return onComplete;
+    }
+
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+}
@@ -0,0 +1,325 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+//Moves onNext/onError/onComplete onto the executor.
+//
+//Elements from the upstream are put into a MySpscArrayQueue sized to prefetch and drained on the
+//executor. The upstream is asked for prefetch elements up front then topped up in batches once 75% of
+//the prefetch has been consumed (the same low-water mark as Reactor's publishOn) rather than one
+//request per element. If the upstream grants SYNC fusion the array queue is skipped and the drain
+//polls the upstream directly.
+//
+//The drain runs on the executor, so an exception thrown by the downstream's onNext would otherwise
+//be lost in an executor thread. It cancels the upstream and is delivered as onError instead.
+public class MyPublishOnFlux<T> extends MyFlux<T> {
+
+    private final MyFlux<T> sourcePublisher;
+    private final Executor executor;
+    private final int prefetch;
+
+    public MyPublishOnFlux(MyFlux<T> sourcePublisher, Executor executor, int prefetch) {
+        super();
+        if (prefetch <= 0) { throw new IllegalArgumentException("prefetch must be positive"); }
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.executor = requireNonNull(executor, "executor cannot be null");
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> targetSubscriptionSubscriber) {
+        sourcePublisher.subscribe(new PublishOnSubscriber<>(targetSubscriptionSubscriber, executor, prefetch));
+    }
+
+    static final class PublishOnSubscriber<T> implements Subscriber<T>, Subscription, Runnable {
+
+        private final Subscriber<? super T> actual;
+        private final Executor executor;
+        private final int prefetch;
+        private final int limit;
+
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+
+        private Subscription sourcePublisherSubscription;
+        private MySpscArrayQueue<T> queue;
+        private MyQueueSubscription<T> fusedQueue;
+        private int sourceMode;
+
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private Throwable error;
+        private long produced; //only touched in run()
+
+        PublishOnSubscriber(Subscriber<? super T> actual, Executor executor, int prefetch) {
+            this.actual = actual;
+            this.executor = executor;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSubscribe(Subscription sourcePublisherSubscription) {
+            this.sourcePublisherSubscription = sourcePublisherSubscription;
+            if (sourcePublisherSubscription instanceof MyQueueSubscription) {
+                MyQueueSubscription<T> queueSubscription = (MyQueueSubscription<T>) sourcePublisherSubscription;
+                int mode = queueSubscription.requestFusion(MyQueueSubscription.ANY);
+                if (mode == MyQueueSubscription.SYNC) {
+                    sourceMode = mode;
+                    fusedQueue = queueSubscription;
+                    done = true;
+                    actual.onSubscribe(this);
+                    return;
+                }
+                if (mode == MyQueueSubscription.ASYNC) {
+                    sourceMode = mode;
+                    fusedQueue = queueSubscription;
+                    actual.onSubscribe(this);
+                    sourcePublisherSubscription.request(prefetch);
+                    return;
+                }
+            }
+            queue = new MySpscArrayQueue<>(prefetch);
+            actual.onSubscribe(this);
+            sourcePublisherSubscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T element) {
+            if (sourceMode == MyQueueSubscription.ASYNC) {
+                schedule();
+                return;
+            }
+            if (done) {
+                return;
+            }
+            if (!queue.offer(element)) {
+                sourcePublisherSubscription.cancel();
+                error = new IllegalStateException("Queue is full: more elements published than requested");
+                done = true;
+            }
+            schedule();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            error = throwable;
+            done = true;
+            schedule();
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) { throw new RuntimeException("Publisher request must be positive"); }
+            MyOperators.addCap(requested, n);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            sourcePublisherSubscription.cancel();
+            //Leaving wip raised stops any further drain being scheduled
+            if (wip.getAndIncrement() == 0) {
+                clear();
+            }
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                cancelled = true;
+                sourcePublisherSubscription.cancel();
+                clear();
+                actual.onError(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (sourceMode == MyQueueSubscription.SYNC) {
+                runSync();
+            } else {
+                runAsync();
+            }
+        }
+
+        private void runSync() {
+            int missed = 1;
+            long emitted = produced;
+            for (;;) {
+                long r = requested.get();
+                while (emitted != r) {
+                    T element;
+                    try {
+                        element = fusedQueue.poll();
+                    } catch (Throwable throwable) {
+                        fusedQueue.cancel();
+                        actual.onError(throwable);
+                        return;
+                    }
+                    if (cancelled) {
+                        clear();
+                        return;
+                    }
+                    if (element == null) {
+                        actual.onComplete();
+                        return;
+                    }
+                    if (!emit(element)) {
+                        return;
+                    }
+                    emitted++;
+                }
+                if (cancelled) {
+                    clear();
+                    return;
+                }
+                if (fusedQueue.isEmpty()) {
+                    actual.onComplete();
+                    return;
+                }
+                int w = wip.get();
+                if (missed == w) {
+                    produced = emitted;
+                    missed = wip.addAndGet(-missed);
+                    if (missed == 0) {
+                        return;
+                    }
+                } else {
+                    missed = w;
+                }
+            }
+        }
+
+        private void runAsync() {
+            int missed = 1;
+            long emitted = produced;
+            for (;;) {
+                long r = requested.get();
+                while (emitted != r) {
+                    boolean d = done;
+                    T element;
+                    try {
+                        element = poll();
+                    } catch (Throwable throwable) {
+                        sourcePublisherSubscription.cancel();
+                        clear();
+                        actual.onError(throwable);
+                        return;
+                    }
+                    boolean empty = element == null;
+                    if (checkTerminated(d, empty)) {
+                        return;
+                    }
+                    if (empty) {
+                        break;
+                    }
+                    if (!emit(element)) {
+                        return;
+                    }
+                    emitted++;
+                    if (emitted == limit) {
+                        if (r != Long.MAX_VALUE) {
+                            r = requested.addAndGet(-emitted);
+                        }
+                        sourcePublisherSubscription.request(emitted);
+                        emitted = 0;
+                    }
+                }
+                if (emitted == r && checkTerminated(done, isEmpty())) {
+                    return;
+                }
+                int w = wip.get();
+                if (missed == w) {
+                    produced = emitted;
+                    missed = wip.addAndGet(-missed);
+                    if (missed == 0) {
+                        return;
+                    }
+                } else {
+                    missed = w;
+                }
+            }
+        }
+
+        //Returns false, leaving wip raised so nothing drains again, when the downstream threw
+        private boolean emit(T element) {
+            try {
+                actual.onNext(element);
+                return true;
+            } catch (Throwable throwable) {
+                cancelled = true;
+                sourcePublisherSubscription.cancel();
+                clear();
+                actual.onError(throwable);
+                return false;
+            }
+        }
+
+        private boolean checkTerminated(boolean d, boolean empty) {
+            if (cancelled) {
+                clear();
+                return true;
+            }
+            if (d) {
+                Throwable throwable = error;
+                if (throwable != null) {
+                    clear();
+                    actual.onError(throwable);
+                    return true;
+                }
+                if (empty) {
+                    actual.onComplete();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private T poll() {
+            return fusedQueue != null ? fusedQueue.poll() : queue.poll();
+        }
+
+        private boolean isEmpty() {
+            return fusedQueue != null ? fusedQueue.isEmpty() : queue.isEmpty();
+        }
+
+        private void clear() {
+            if (fusedQueue != null) {
+                fusedQueue.clear();
+            } else if (queue != null) {
+                queue.clear();
+            }
+        }
+    }
+
+}
@@ -3,17 +3,34 @@ package com.pall.reactor.raw;
 import static java.util.Objects.requireNonNull;
 
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
-//Publisher create to understand how publishers interact with subscribers. This is not an example of good coding practices. 
+//Publisher create to understand how publishers interact with subscribers. This is not an example of good coding practices.
+//
+//Elements can be published from many threads at once. Demand is reserved with a CAS on an
+//overflow-capped counter (Long.MAX_VALUE means unbounded, as with Reactor's Operators.addCap) and
+//signals are handed to the subscriber through a work-in-progress drain loop so onNext, onComplete
+//and onError are never called concurrently (Reactive Streams rule 1.3).
 public class MyPublisher<T> implements Publisher<T>, Subscription{
 
-    private Subscriber<? super T> subscriber;
-    private long requested = 0;
-    private boolean cancelled = false;
+    private volatile Subscriber<? super T> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    private volatile boolean cancelled = false;
+
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean done = false;
+    private volatile Throwable error;
+    private boolean terminated = false; //only touched by the thread owning the drain loop
 
     @Override //Publisher
     public void subscribe(Subscriber<? super T> subscriber) {
@@ -24,33 +41,162 @@ public class MyPublisher<T> implements Publisher<T>, Subscription{
     @Override //Subscription
     public void cancel() {
         cancelled = true;
+        drain();
     }
 
     @Override //Subscription
     public void request(long requested) {
     	if(requested < 0) { throw new RuntimeException("Publisher request must be positive"); };
-        this.requested = this.requested + requested;
-        
+        MyOperators.addCap(this.requested, requested);
     }
 
     @SuppressWarnings("unchecked")
     public void next(T... elements ) {
-        Arrays.stream(elements).forEach(this::nextInternal);       
+        for (T element : elements) {
+            nextInternal(element);
+        }
     }
 
     public void complete() {
-        subscriber.onComplete();
+        requireNonNull(subscriber, "Attempted to complete publisher prior to publisher being subscribed to");
+        done = true;
+        drain();
     }
 
     public void error(Throwable throwable) {
-        subscriber.onError(throwable);
+        requireNonNull(subscriber, "Attempted to error publisher prior to publisher being subscribed to");
+        error = throwable;
+        done = true;
+        drain();
     }
-    
+
+    //Emits as many of the elements as there is demand for, reserving that demand once for the whole
+    //batch rather than per element. Returns how many were emitted, the rest are left with the caller
+    //to offer again once more has been requested. If the subscriber cancels part way through the batch
+    //only the elements it was sent before then are counted.
+    @SuppressWarnings("unchecked")
+    public int emitBatch(T... elements) {
+        return emitBatch(Arrays.asList(elements));
+    }
+
+    public int emitBatch(List<? extends T> elements) {
+        requireNonNull(subscriber, "Attempted to publish element prior to publisher being subscribed to");
+        if (cancelled) {throw new RuntimeException("Publisher cancelled by subscriber");}
+        int reserved = (int) reserve(elements.size());
+        if (reserved == 0) {
+            return 0;
+        }
+        return emit(elements, reserved);
+    }
+
     private void nextInternal(T element) {
     	requireNonNull(subscriber, "Attempted to publish element prior to publisher being subscribed to");
     	if (cancelled) {throw new RuntimeException("Publisher cancelled by subscriber");}
-    	if (requested == 0) {throw new RuntimeException("More elements published than requested");}
-    	subscriber.onNext(element);
-    	requested--;
+    	if (reserve(1) == 0) {throw new RuntimeException("More elements published than requested");}
+
+    	//Fast path: nobody else is draining and nothing is queued so emit straight from this thread
+    	if (wip.get() == 0 && wip.compareAndSet(0, 1)) {
+    	    if (queue.isEmpty()) {
+    	        subscriber.onNext(element);
+    	        if (wip.decrementAndGet() == 0) {
+    	            return;
+    	        }
+    	    } else {
+    	        queue.offer(element);
+    	    }
+    	    drainLoop();
+    	    return;
+    	}
+    	queue.offer(element);
+    	drain();
+    }
+
+    //Same fast path as nextInternal for the first count elements, demand for them has already been reserved.
+    //Returns how many were emitted or queued, fewer than count if the subscriber cancelled part way through.
+    private int emit(List<? extends T> elements, int count) {
+    	int emitted = count;
+    	if (wip.get() == 0 && wip.compareAndSet(0, 1)) {
+    	    if (queue.isEmpty()) {
+    	        Subscriber<? super T> s = subscriber;
+    	        Iterator<? extends T> iterator = elements.iterator();
+    	        emitted = 0;
+    	        while (emitted < count && !cancelled) {
+    	            s.onNext(iterator.next());
+    	            emitted++;
+    	        }
+    	        if (wip.decrementAndGet() == 0) {
+    	            return emitted;
+    	        }
+    	    } else {
+    	        offerAll(elements, count);
+    	    }
+    	    drainLoop();
+    	    return emitted;
+    	}
+    	offerAll(elements, count);
+    	drain();
+    	return emitted;
+    }
+
+    private void offerAll(List<? extends T> elements, int count) {
+        Iterator<? extends T> iterator = elements.iterator();
+        for (int i = 0; i < count; i++) {
+            queue.offer(iterator.next());
+        }
+    }
+
+    //Takes up to n units of demand in a single CAS, returns how many were taken
+    private long reserve(long n) {
+        for (;;) {
+            long current = requested.get();
+            if (current == Long.MAX_VALUE) {
+                return n;
+            }
+            if (current == 0) {
+                return 0;
+            }
+            long taken = Math.min(current, n);
+            if (requested.compareAndSet(current, current - taken)) {
+                return taken;
+            }
+        }
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        drainLoop();
+    }
+
+    private void drainLoop() {
+        int missed = 1;
+        for (;;) {
+            if (cancelled) {
+                queue.clear();
+            } else {
+                T element;
+                while ((element = queue.poll()) != null) {
+                    subscriber.onNext(element);
+                    if (cancelled) {
+                        queue.clear();
+                        break;
+                    }
+                }
+                if (done && !terminated && !cancelled && queue.isEmpty()) {
+                    terminated = true;
+                    Throwable throwable = error;
+                    if (throwable != null) {
+                        subscriber.onError(throwable);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
     }
 }
@@ -0,0 +1,33 @@
+package com.pall.reactor.raw;
+
+import org.reactivestreams.Subscription;
+
+//Cut down version of Reactor's Fuseable.QueueSubscription used to negotiate micro-fusion between
+//adjacent raw operators.
+//
+//A downstream stage checks whether the Subscription passed to onSubscribe is a MyQueueSubscription
+//and, if so, calls requestFusion with the modes it can handle. When SYNC is granted the upstream
+//stops signalling onNext and the downstream pulls values with poll() instead, a null from poll()
+//meaning the sequence has completed. When ASYNC is granted the upstream calls onNext(null) to say
+//values are ready to be polled and still signals onComplete/onError as normal. NONE means the
+//stages carry on using request/onNext.
+public interface MyQueueSubscription<T> extends Subscription {
+
+    int NONE = 0;
+    int SYNC = 1;
+    int ASYNC = 2;
+    int ANY = SYNC | ASYNC;
+
+    //Returns the mode that has been granted, must be called from within onSubscribe before any
+    //request is made
+    int requestFusion(int requestedMode);
+
+    T poll();
+
+    boolean isEmpty();
+
+    int size();
+
+    void clear();
+
+}
@@ -0,0 +1,75 @@
+package com.pall.reactor.raw;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//Bounded single-producer/single-consumer queue backed by a pre-sized array, used at the raw async
+//boundaries instead of a linked queue so no node is allocated per element.
+//
+//Capacity is rounded up to a power of two so the slot is a mask of the index. A slot holding a value
+//means the producer has filled it and the consumer has not taken it yet, which is all either side
+//needs to check, the indexes are only read by the other side for size/isEmpty.
+final class MySpscArrayQueue<T> {
+
+    private final AtomicReferenceArray<T> buffer;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    MySpscArrayQueue(int capacity) {
+        if (capacity <= 0) { throw new IllegalArgumentException("capacity must be positive"); }
+        int actualCapacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new AtomicReferenceArray<>(actualCapacity);
+        this.mask = actualCapacity - 1;
+    }
+
+    //Producer side only. Returns false if the queue is full.
+    boolean offer(T element) {
+        long index = producerIndex.get();
+        int offset = (int) index & mask;
+        if (buffer.get(offset) != null) {
+            return false;
+        }
+        buffer.lazySet(offset, element);
+        producerIndex.lazySet(index + 1);
+        return true;
+    }
+
+    //Consumer side only. Returns null if the queue is empty.
+    T poll() {
+        long index = consumerIndex.get();
+        int offset = (int) index & mask;
+        T element = buffer.get(offset);
+        if (element == null) {
+            return null;
+        }
+        buffer.lazySet(offset, null);
+        consumerIndex.lazySet(index + 1);
+        return element;
+    }
+
+    //Consumer side only
+    T peek() {
+        return buffer.get((int) consumerIndex.get() & mask);
+    }
+
+    //Consumer side only
+    void clear() {
+        while (poll() != null) {
+            //drop
+        }
+    }
+
+    boolean isEmpty() {
+        return producerIndex.get() == consumerIndex.get();
+    }
+
+    int size() {
+        return (int) (producerIndex.get() - consumerIndex.get());
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+}
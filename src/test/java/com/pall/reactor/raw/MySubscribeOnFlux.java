@@ -0,0 +1,27 @@
+package com.pall.reactor.raw;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.Executor;
+
+import org.reactivestreams.Subscriber;
+
+//Subscribes to the source on the executor so the source's onSubscribe, and anything it does from
+//there such as emitting in response to request, runs off the subscribing thread.
+public class MySubscribeOnFlux<T> extends MyFlux<T> {
+
+    private final MyFlux<T> sourcePublisher;
+    private final Executor executor;
+
+    public MySubscribeOnFlux(MyFlux<T> sourcePublisher, Executor executor) {
+        super();
+        this.sourcePublisher = requireNonNull(sourcePublisher, "sourcePublisher cannot be null");
+        this.executor = requireNonNull(executor, "executor cannot be null");
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> targetSubscriptionSubscriber) {
+        executor.execute(() -> sourcePublisher.subscribe(targetSubscriptionSubscriber));
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.pall.reactor;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.web.reactive.function.client.WebClient.create;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+//As NonBlockingVSBlockingAPICalls.testBlockingCall_BoundedElastic but the blocking calls run on virtual threads
+public class VirtualThreadBlockingCalls {
+
+	//Delays are served asynchronously so WireMock itself can hold thousands of slow calls open
+	@RegisterExtension
+	static WireMockExtension wireMock = WireMockExtension.newInstance()
+		.options(wireMockConfig().dynamicPort().asynchronousResponseEnabled(true).asynchronousResponseThreads(50))
+		.build();
+	
+	private Scheduler virtualThreads;
+	
+	@BeforeEach
+	public void stubs() {
+		virtualThreads = VirtualThreadScheduler.create();
+		wireMock.stubFor(get(urlEqualTo("/fast"))
+		        .willReturn(aResponse()
+		            .withStatus(200)
+		            .withBody("Fast Response")));
+		wireMock.stubFor(get(urlEqualTo("/slow"))
+		        .willReturn(aResponse()
+		        	.withFixedDelay(500)
+		            .withStatus(200)
+		            .withBody("Slow Response")));
+	}
+	
+	@AfterEach
+	public void dispose() {
+		virtualThreads.dispose();
+	}
+	
+	@Test
+	@DisplayName("Blocking calls on virtual threads serve the fastest response first")
+	public void testBlockingCall_VirtualThreads() {
+		Flux<String> flux = Flux.just(
+				"/slow", 
+				"/fast",
+				"/fast"
+				).flatMap(uri -> 
+					Mono.just(uri)
+						.publishOn(virtualThreads)
+							.map(u ->
+								create(wireMock.baseUrl())
+								.get()
+								.uri(u)
+								.retrieve()
+								.bodyToFlux(String.class)
+								.blockFirst()
+								)
+							);
+		
+		StepVerifier.create(flux)
+		.expectNext(
+				"Fast Response",
+				"Fast Response",
+				"Slow Response"
+				)
+		.verifyComplete();
+	}
+	
+	@Test
+	@DisplayName("Thousands of blocking calls run at once, well past the boundedElastic thread cap")
+	public void testManyBlockingCalls_VirtualThreads() {
+		//Enough calls that boundedElastic would need at least four rounds of 500ms
+		int boundedElasticCap = Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE;
+		int calls = Math.max(2_000, 4 * boundedElasticCap);
+		HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+		HttpRequest request = HttpRequest.newBuilder(URI.create(wireMock.baseUrl() + "/slow")).build();
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		
+		long start = System.nanoTime();
+		Long count = Flux.range(0, calls)
+			.flatMap(i -> Mono.fromCallable(() -> {
+					threads.add(Thread.currentThread());
+					return httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+				})
+				.subscribeOn(virtualThreads), calls)
+			.count()
+			.block(Duration.ofSeconds(60));
+		Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+		
+		assertEquals(calls, count);
+		assertTrue(threads.stream().allMatch(Thread::isVirtual));
+		//boundedElastic can only have boundedElasticCap calls blocked at a time
+		Duration boundedElasticMinimum = Duration.ofMillis(500L * calls / boundedElasticCap);
+		assertTrue(elapsed.compareTo(boundedElasticMinimum) < 0,
+				format("%d calls took %dms, boundedElastic would need at least %dms", calls, elapsed.toMillis(), boundedElasticMinimum.toMillis()));
+	}
+}
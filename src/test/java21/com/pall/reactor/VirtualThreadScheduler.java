@@ -0,0 +1,21 @@
+package com.pall.reactor;
+
+import java.util.concurrent.Executors;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+//A Scheduler that runs every task on its own virtual thread (Java 21). Blocking calls park the virtual
+//thread rather than holding a platform thread, so there is no 10 x cores cap as with boundedElastic and
+//each blocked call costs a small heap allocated stack instead of a full thread stack.
+//
+//Only compiled with -PvirtualThreads, see build.gradle.
+public final class VirtualThreadScheduler {
+
+    private VirtualThreadScheduler() {
+    }
+
+    public static Scheduler create() {
+        return Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "virtualThreads");
+    }
+}